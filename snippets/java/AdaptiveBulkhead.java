@@ -0,0 +1,305 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.bulkhead.BulkheadFullException;
+import io.github.resilience4j.bulkhead.event.BulkheadEvent;
+import io.github.resilience4j.bulkhead.event.BulkheadOnCallFinishedEvent;
+import io.github.resilience4j.bulkhead.event.BulkheadOnCallPermittedEvent;
+import io.github.resilience4j.bulkhead.event.BulkheadOnCallRejectedEvent;
+import io.github.resilience4j.circuitbreaker.CallNotPermittedException;
+import io.github.resilience4j.core.EventConsumer;
+import io.github.resilience4j.core.EventProcessor;
+import io.github.resilience4j.ratelimiter.RequestNotPermitted;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Bulkhead cujo limite de chamadas concorrentes e ajustado pelo RTT observado (gradiente) e pelos erros (AIMD)
+public class AdaptiveBulkhead implements Bulkhead, MeterBinder {
+    private static final double RTT_TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double ERROR_BACKOFF = 0.9;
+    private static final int LONG_WINDOW = 600;
+
+    private final String name;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long sampleWindowNanos;
+    private final Predicate<Throwable> downstreamError;
+    private final AdaptiveBulkheadEventProcessor eventProcessor = new AdaptiveBulkheadEventProcessor();
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAdder permitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    private final LongAdder rttSum = new LongAdder();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final AtomicLong nextUpdate;
+
+    private volatile double estimatedLimit;
+    private volatile int limit;
+    private volatile BulkheadConfig config;
+    private volatile double longRtt;
+
+    public AdaptiveBulkhead(String name, int initialLimit, int minLimit, int maxLimit, Duration sampleWindow) {
+        this(name, initialLimit, minLimit, maxLimit, sampleWindow, error -> true);
+    }
+
+    // downstreamError diz quais erros foram causados pelo servico remoto; so esses reduzem o limite
+    public AdaptiveBulkhead(String name, int initialLimit, int minLimit, int maxLimit, Duration sampleWindow,
+                            Predicate<Throwable> downstreamError) {
+        this.name = name;
+        this.downstreamError = downstreamError;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.sampleWindowNanos = sampleWindow.toNanos();
+        this.nextUpdate = new AtomicLong(System.nanoTime() + sampleWindowNanos);
+        setLimit(initialLimit);
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    @Override
+    public boolean tryAcquirePermission() {
+        int current;
+        do {
+            current = inFlight.get();
+            if (current >= limit) {
+                rejected.increment();
+                if (eventProcessor.hasConsumers()) {
+                    eventProcessor.processEvent(new BulkheadOnCallRejectedEvent(name));
+                }
+                return false;
+            }
+        } while (!inFlight.compareAndSet(current, current + 1));
+        permitted.increment();
+        if (eventProcessor.hasConsumers()) {
+            eventProcessor.processEvent(new BulkheadOnCallPermittedEvent(name));
+        }
+        return true;
+    }
+
+    @Override
+    public void acquirePermission() {
+        if (!tryAcquirePermission()) {
+            throw BulkheadFullException.createBulkheadFullException(this);
+        }
+    }
+
+    // O inicio da chamada volta para quem pediu a permissao e e devolvido em onComplete(start, error), entao a
+    // amostra continua certa quando a chamada termina em outra thread
+    public long acquireTimedPermission() {
+        acquirePermission();
+        return System.nanoTime();
+    }
+
+    @Override
+    public void releasePermission() {
+        inFlight.decrementAndGet();
+    }
+
+    // Chamado pelos decorators estaticos (Bulkhead.decorateSupplier etc.), que nao informam inicio nem erro: a vaga e
+    // devolvida sem gerar amostra
+    @Override
+    public void onComplete() {
+        inFlight.decrementAndGet();
+        publishFinished();
+    }
+
+    public void onComplete(long startNanos, Throwable error) {
+        long rttNanos = System.nanoTime() - startNanos;
+        inFlight.decrementAndGet();
+        // rejeicoes de componentes internos (circuit breaker aberto, rate limiter) nao chegaram ao servico remoto e
+        // nao dizem nada sobre o RTT nem sobre a capacidade dele
+        if (!(error instanceof CallNotPermittedException || error instanceof RequestNotPermitted
+                || error instanceof BulkheadFullException)) {
+            rttSum.add(rttNanos);
+            samples.increment();
+            if (error != null && downstreamError.test(error)) {
+                errors.increment();
+            }
+        }
+        publishFinished();
+
+        long now = System.nanoTime();
+        long deadline = nextUpdate.get();
+        if (now >= deadline && nextUpdate.compareAndSet(deadline, now + sampleWindowNanos)) {
+            updateLimit();
+        }
+    }
+
+    @Override
+    public <T> T executeSupplier(Supplier<T> supplier) {
+        long start = acquireTimedPermission();
+        Throwable error = null;
+        try {
+            return supplier.get();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            onComplete(start, error);
+        }
+    }
+
+    @Override
+    public <T> T executeCallable(Callable<T> callable) throws Exception {
+        long start = acquireTimedPermission();
+        Throwable error = null;
+        try {
+            return callable.call();
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            onComplete(start, error);
+        }
+    }
+
+    private void publishFinished() {
+        if (eventProcessor.hasConsumers()) {
+            eventProcessor.processEvent(new BulkheadOnCallFinishedEvent(name));
+        }
+    }
+
+    // Executado por uma unica thread por janela (a que venceu o CAS em nextUpdate)
+    private void updateLimit() {
+        long count = samples.sumThenReset();
+        long sum = rttSum.sumThenReset();
+        long failures = errors.sumThenReset();
+        if (count == 0) {
+            return;
+        }
+        double shortRtt = (double) sum / count;
+        longRtt = longRtt == 0 ? shortRtt : longRtt + (shortRtt - longRtt) * 2 / (LONG_WINDOW + 1);
+        // depois de um pico a media longa fica alta demais; ela cai mais rapido para o limite nao crescer sem controle
+        if (longRtt / shortRtt > 2) {
+            longRtt *= 0.95;
+        }
+
+        double current = estimatedLimit;
+        double next;
+        if (failures > 0) {
+            next = current * ERROR_BACKOFF;
+        } else if (inFlight.get() < current / 2) {
+            // com pouca carga o RTT nao diz nada sobre a capacidade do servico remoto
+            return;
+        } else {
+            double gradient = Math.max(0.5, Math.min(1.0, RTT_TOLERANCE * longRtt / shortRtt));
+            next = current * gradient + Math.sqrt(current);
+        }
+        setLimit(current * (1 - SMOOTHING) + next * SMOOTHING);
+    }
+
+    private void setLimit(double newLimit) {
+        estimatedLimit = Math.max(minLimit, Math.min(maxLimit, newLimit));
+        int rounded = (int) estimatedLimit;
+        if (rounded != limit || config == null) {
+            limit = rounded;
+            config = BulkheadConfig.custom().maxConcurrentCalls(rounded).maxWaitDuration(Duration.ZERO).build();
+        }
+    }
+
+    @Override
+    public void changeConfig(BulkheadConfig newConfig) {
+        setLimit(newConfig.getMaxConcurrentCalls());
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public BulkheadConfig getBulkheadConfig() {
+        return config;
+    }
+
+    @Override
+    public Metrics getMetrics() {
+        return new Metrics() {
+            @Override
+            public int getAvailableConcurrentCalls() {
+                return Math.max(0, limit - inFlight.get());
+            }
+
+            @Override
+            public int getMaxAllowedConcurrentCalls() {
+                return limit;
+            }
+        };
+    }
+
+    @Override
+    public Map<String, String> getTags() {
+        return Collections.emptyMap();
+    }
+
+    @Override
+    public EventPublisher getEventPublisher() {
+        return eventProcessor;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder("bulkhead.adaptive.limit", this, AdaptiveBulkhead::getLimit)
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("bulkhead.adaptive.inflight", this, AdaptiveBulkhead::getInFlight)
+            .tag("name", name)
+            .register(registry);
+        FunctionCounter.builder("bulkhead.adaptive.calls", permitted, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "permitted")
+            .register(registry);
+        FunctionCounter.builder("bulkhead.adaptive.calls", rejected, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "rejected")
+            .register(registry);
+    }
+
+    private static class AdaptiveBulkheadEventProcessor extends EventProcessor<BulkheadEvent> implements EventPublisher {
+
+        @Override
+        public EventPublisher onCallPermitted(EventConsumer<BulkheadOnCallPermittedEvent> consumer) {
+            registerConsumer(BulkheadOnCallPermittedEvent.class.getName(), consumer);
+            return this;
+        }
+
+        @Override
+        public EventPublisher onCallRejected(EventConsumer<BulkheadOnCallRejectedEvent> consumer) {
+            registerConsumer(BulkheadOnCallRejectedEvent.class.getName(), consumer);
+            return this;
+        }
+
+        @Override
+        public EventPublisher onCallFinished(EventConsumer<BulkheadOnCallFinishedEvent> consumer) {
+            registerConsumer(BulkheadOnCallFinishedEvent.class.getName(), consumer);
+            return this;
+        }
+    }
+}
+
+//Neste exemplo, o AdaptiveBulkhead substitui os limites fixos (maxConcurrentCalls(50) e (10)) por um limite calculado
+// a partir do RTT: enquanto o RTT recente fica proximo da media longa o limite cresce, quando o RTT sobe o limite cai
+// proporcionalmente, e erros causados pelo servico remoto reduzem o limite em 10% (AIMD); rejeicoes do circuit breaker
+// aberto e erros 4xx do proprio pedido nao contam. Como implementa a interface Bulkhead, pode ser injetado
+// onde um Bulkhead e usado hoje. As metricas bulkhead.adaptive.limit, .inflight e .calls{kind=permitted|rejected}
+// mostram o limite atual, as chamadas em andamento e a taxa de rejeicao.
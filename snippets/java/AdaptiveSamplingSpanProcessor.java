@@ -0,0 +1,411 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.SpanKind;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.exporter.otlp.trace.OtlpGrpcSpanExporter;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.ReadWriteSpan;
+import io.opentelemetry.sdk.trace.ReadableSpan;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.SpanLimits;
+import io.opentelemetry.sdk.trace.SpanProcessor;
+import io.opentelemetry.sdk.trace.data.LinkData;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import io.opentelemetry.sdk.trace.samplers.Sampler;
+import io.opentelemetry.sdk.trace.samplers.SamplingDecision;
+import io.opentelemetry.sdk.trace.samplers.SamplingResult;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnMissingBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Amostragem na cabeca com taxa alvo de traces por segundo (a probabilidade cai quando o trafego sobe) e retencao na
+// cauda: traces nao amostrados sao gravados (RECORD_ONLY) e, quando a raiz local termina, sao exportados mesmo assim se
+// algum span teve erro ou passou do limite de latencia. Tudo que espera exportacao fica em memoria limitada.
+public class AdaptiveSamplingSpanProcessor implements SpanProcessor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdaptiveSamplingSpanProcessor.class);
+    private static final long RECOMPUTE_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final SpanExporter exporter;
+    private final double targetTracesPerSecond;
+    private final long slowThresholdNanos;
+    private final long pendingTimeoutNanos;
+    private final int maxPendingTraces;
+    private final int maxSpansPerTrace;
+    private final int maxExportBatchSize;
+    private final long exportIntervalNanos;
+    private final BlockingQueue<SpanData> queue;
+    private final ConcurrentMap<String, PendingTrace> pending = new ConcurrentHashMap<>();
+    private final AtomicInteger pendingCount = new AtomicInteger();
+    private final Sampler sampler = new AdaptiveSampler();
+    private final Thread exportThread;
+    // SpanExporter.export nao pode ser chamado em paralelo: a thread de exportacao e forceFlush se revezam
+    private final ReentrantLock exportLock = new ReentrantLock();
+    private final Timer exportTimer;
+    private volatile boolean running = true;
+    private volatile double probability = 1.0;
+
+    private final LongAdder rootSpans = new LongAdder();
+    private final LongAdder headSampled = new LongAdder();
+    private final LongAdder tailRetained = new LongAdder();
+    private final LongAdder discarded = new LongAdder();
+    private final LongAdder queueFull = new LongAdder();
+    private final LongAdder overheadNanos = new LongAdder();
+
+    public AdaptiveSamplingSpanProcessor(SpanExporter exporter, double targetTracesPerSecond, Duration slowThreshold,
+                                         int maxQueueSize, int maxExportBatchSize, Duration exportInterval,
+                                         int maxPendingTraces, int maxSpansPerTrace, MeterRegistry meterRegistry) {
+        this.exporter = exporter;
+        this.targetTracesPerSecond = targetTracesPerSecond;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.pendingTimeoutNanos = TimeUnit.SECONDS.toNanos(30);
+        this.maxPendingTraces = maxPendingTraces;
+        this.maxSpansPerTrace = maxSpansPerTrace;
+        this.maxExportBatchSize = maxExportBatchSize;
+        this.exportIntervalNanos = exportInterval.toNanos();
+        this.queue = new ArrayBlockingQueue<>(maxQueueSize);
+        this.exportTimer = Timer.builder("tracing.export.duration").register(meterRegistry);
+        counter(meterRegistry, "head_sampled", headSampled);
+        counter(meterRegistry, "tail_retained", tailRetained);
+        counter(meterRegistry, "discarded", discarded);
+        counter(meterRegistry, "queue_full", queueFull);
+        // tempo gasto pelo sampler e pelo onEnd nas threads das requisicoes
+        FunctionCounter.builder("tracing.processor.overhead", overheadNanos, adder -> adder.sum() / 1e9)
+            .baseUnit("seconds")
+            .register(meterRegistry);
+        Gauge.builder("tracing.sampler.probability", this, processor -> processor.probability).register(meterRegistry);
+        Gauge.builder("tracing.export.queue", queue, BlockingQueue::size).register(meterRegistry);
+        Gauge.builder("tracing.pending.traces", pendingCount, AtomicInteger::get).register(meterRegistry);
+        this.exportThread = new Thread(this::exportLoop, "span-exporter");
+        this.exportThread.setDaemon(true);
+        this.exportThread.start();
+    }
+
+    // Deve ser o sampler do mesmo SdkTracerProvider
+    public Sampler sampler() {
+        return sampler;
+    }
+
+    @Override
+    public void onStart(Context parentContext, ReadWriteSpan span) {
+    }
+
+    @Override
+    public boolean isStartRequired() {
+        return false;
+    }
+
+    @Override
+    public void onEnd(ReadableSpan span) {
+        long start = System.nanoTime();
+        try {
+            if (span.getSpanContext().isSampled()) {
+                headSampled.increment();
+                enqueue(span.toSpanData());
+                return;
+            }
+            SpanData data = span.toSpanData();
+            boolean interesting = isInteresting(data);
+            String traceId = span.getSpanContext().getTraceId();
+            SpanContext parent = span.getParentSpanContext();
+            if (!parent.isValid() || parent.isRemote()) {
+                PendingTrace trace = pending.remove(traceId);
+                if (trace != null) {
+                    pendingCount.decrementAndGet();
+                }
+                finish(trace, data, interesting || (trace != null && trace.interesting));
+                return;
+            }
+            PendingTrace trace = pending.get(traceId);
+            if (trace == null) {
+                if (pendingCount.incrementAndGet() > maxPendingTraces) {
+                    // sem espaco: um span interessante ainda e exportado sozinho
+                    pendingCount.decrementAndGet();
+                    finish(null, data, interesting);
+                    return;
+                }
+                PendingTrace created = new PendingTrace(start);
+                trace = pending.putIfAbsent(traceId, created);
+                if (trace == null) {
+                    trace = created;
+                } else {
+                    pendingCount.decrementAndGet();
+                }
+            }
+            trace.add(data, interesting, maxSpansPerTrace);
+        } finally {
+            overheadNanos.add(System.nanoTime() - start);
+        }
+    }
+
+    @Override
+    public boolean isEndRequired() {
+        return true;
+    }
+
+    private boolean isInteresting(SpanData data) {
+        if (data.getStatus().getStatusCode() == StatusCode.ERROR
+            || data.getEndEpochNanos() - data.getStartEpochNanos() >= slowThresholdNanos) {
+            return true;
+        }
+        return data.getEvents().stream().anyMatch(event -> "exception".equals(event.getName()));
+    }
+
+    private void finish(PendingTrace trace, SpanData root, boolean keep) {
+        if (!keep) {
+            discarded.add(1 + (trace == null ? 0 : trace.size()));
+            return;
+        }
+        if (trace != null) {
+            for (SpanData data : trace.drain()) {
+                tailRetained.increment();
+                enqueue(data);
+            }
+        }
+        tailRetained.increment();
+        enqueue(root);
+    }
+
+    // Fila cheia descarta o span em vez de bloquear a requisicao
+    private void enqueue(SpanData data) {
+        if (!queue.offer(data)) {
+            queueFull.increment();
+        }
+    }
+
+    private void exportLoop() {
+        List<SpanData> batch = new ArrayList<>(maxExportBatchSize);
+        long nextRecompute = System.nanoTime() + RECOMPUTE_NANOS;
+        while (running) {
+            try {
+                SpanData first = queue.poll(exportIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first != null) {
+                    batch.add(first);
+                    queue.drainTo(batch, maxExportBatchSize - 1);
+                    export(batch);
+                    batch.clear();
+                }
+                long now = System.nanoTime();
+                if (now >= nextRecompute) {
+                    recomputeProbability(now - nextRecompute + RECOMPUTE_NANOS);
+                    expirePending(now);
+                    nextRecompute = now + RECOMPUTE_NANOS;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                LOGGER.warn("Span export failed", e);
+            }
+        }
+    }
+
+    // Espera o export terminar antes de soltar o lock: um join interrompido deixaria o proximo export comecar com este
+    // ainda em andamento. O shutdown so interrompe com o lock, entao a interrupcao pendente e guardada e restaurada
+    private CompletableResultCode export(List<SpanData> batch) {
+        exportLock.lock();
+        boolean interrupted = Thread.interrupted();
+        try {
+            long start = System.nanoTime();
+            CompletableResultCode result = exporter.export(new ArrayList<>(batch)).join(10, TimeUnit.SECONDS);
+            exportTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } finally {
+            exportLock.unlock();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void recomputeProbability(long elapsedNanos) {
+        double rate = rootSpans.sumThenReset() * 1e9 / elapsedNanos;
+        double target = rate <= targetTracesPerSecond ? 1.0 : targetTracesPerSecond / rate;
+        // media entre o valor anterior e o novo para um pico de um segundo nao derrubar a amostragem
+        probability = (probability + target) / 2;
+    }
+
+    // Traces cuja raiz nunca termina aqui (raiz em outra thread que falhou, spans que terminam depois da raiz)
+    private void expirePending(long now) {
+        pending.forEach((traceId, trace) -> {
+            if (now - trace.createdNanos >= pendingTimeoutNanos && pending.remove(traceId, trace)) {
+                pendingCount.decrementAndGet();
+                if (trace.interesting) {
+                    for (SpanData data : trace.drain()) {
+                        tailRetained.increment();
+                        enqueue(data);
+                    }
+                } else {
+                    discarded.add(trace.size());
+                }
+            }
+        });
+    }
+
+    private static void counter(MeterRegistry registry, String kind, LongAdder counter) {
+        FunctionCounter.builder("tracing.spans", counter, LongAdder::sum)
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    @Override
+    // Exporta na thread de quem chama, em lotes de maxExportBatchSize, depois do lote que a thread de exportacao
+    // estiver enviando
+    public CompletableResultCode forceFlush() {
+        List<CompletableResultCode> results = new ArrayList<>();
+        List<SpanData> batch = new ArrayList<>(maxExportBatchSize);
+        while (queue.drainTo(batch, maxExportBatchSize) > 0) {
+            results.add(export(batch));
+            batch.clear();
+        }
+        return CompletableResultCode.ofAll(results);
+    }
+
+    // A thread de exportacao termina antes do flush final e do exporter.shutdown, para nenhum export correr junto
+    @Override
+    public CompletableResultCode shutdown() {
+        exportLock.lock();
+        try {
+            running = false;
+            exportThread.interrupt();
+        } finally {
+            exportLock.unlock();
+        }
+        try {
+            exportThread.join(TimeUnit.SECONDS.toMillis(10));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        forceFlush();
+        return exporter.shutdown();
+    }
+
+    // Filhos seguem a decisao do pai; raizes sao amostradas com a probabilidade atual. O que nao e amostrado fica
+    // RECORD_ONLY para que o processor possa reter o trace se ele terminar com erro ou lento
+    private final class AdaptiveSampler implements Sampler {
+        @Override
+        public SamplingResult shouldSample(Context parentContext, String traceId, String name, SpanKind spanKind,
+                                           Attributes attributes, List<LinkData> parentLinks) {
+            long start = System.nanoTime();
+            SpanContext parent = Span.fromContext(parentContext).getSpanContext();
+            boolean sampled;
+            if (parent.isValid()) {
+                sampled = parent.isSampled();
+            } else {
+                rootSpans.increment();
+                sampled = ThreadLocalRandom.current().nextDouble() < probability;
+            }
+            overheadNanos.add(System.nanoTime() - start);
+            return SamplingResult.create(sampled ? SamplingDecision.RECORD_AND_SAMPLE : SamplingDecision.RECORD_ONLY);
+        }
+
+        @Override
+        public String getDescription() {
+            return "AdaptiveSampler{targetTracesPerSecond=" + targetTracesPerSecond + "}";
+        }
+    }
+
+    private static final class PendingTrace {
+        private final long createdNanos;
+        private final List<SpanData> spans = new ArrayList<>();
+        private volatile boolean interesting;
+
+        private PendingTrace(long createdNanos) {
+            this.createdNanos = createdNanos;
+        }
+
+        synchronized void add(SpanData data, boolean interesting, int maxSpans) {
+            if (interesting) {
+                this.interesting = true;
+            }
+            if (spans.size() < maxSpans) {
+                spans.add(data);
+            }
+        }
+
+        synchronized List<SpanData> drain() {
+            List<SpanData> drained = new ArrayList<>(spans);
+            spans.clear();
+            return drained;
+        }
+
+        synchronized int size() {
+            return spans.size();
+        }
+    }
+}
+
+@Configuration
+class TracingConfiguration {
+
+    @Bean
+    @ConditionalOnMissingBean
+    public SpanExporter spanExporter() {
+        return OtlpGrpcSpanExporter.getDefault();
+    }
+
+    @Bean(destroyMethod = "shutdown")
+    public AdaptiveSamplingSpanProcessor adaptiveSamplingSpanProcessor(SpanExporter spanExporter,
+                                                                       MeterRegistry meterRegistry,
+                                                                       @Value("${tracing.target-traces-per-second:50}") double targetTracesPerSecond,
+                                                                       @Value("${tracing.slow-threshold:500ms}") Duration slowThreshold,
+                                                                       @Value("${tracing.max-queue-size:4096}") int maxQueueSize,
+                                                                       @Value("${tracing.max-export-batch-size:512}") int maxExportBatchSize) {
+        return new AdaptiveSamplingSpanProcessor(spanExporter, targetTracesPerSecond, slowThreshold, maxQueueSize,
+            maxExportBatchSize, Duration.ofSeconds(1), 10_000, 64, meterRegistry);
+    }
+
+    // Limites do SDK: atributos longos (como um corpo de resposta) sao truncados antes de chegar ao processor
+    @Bean(destroyMethod = "close")
+    public SdkTracerProvider sdkTracerProvider(AdaptiveSamplingSpanProcessor processor,
+                                               @Value("${tracing.max-attribute-length:256}") int maxAttributeLength) {
+        return SdkTracerProvider.builder()
+            .setSampler(processor.sampler())
+            .addSpanProcessor(processor)
+            .setSpanLimits(SpanLimits.builder()
+                .setMaxAttributeValueLength(maxAttributeLength)
+                .setMaxNumberOfAttributes(32)
+                .setMaxNumberOfEvents(16)
+                .build())
+            .build();
+    }
+
+    @Bean
+    public Tracer tracer(SdkTracerProvider sdkTracerProvider) {
+        return sdkTracerProvider.get("user-service");
+    }
+}
+
+//Neste exemplo, em vez de exportar um span por chamada (com o corpo inteiro da resposta como atributo), o
+// AdaptiveSamplingSpanProcessor exporta em media tracing.target-traces-per-second traces por segundo: a probabilidade
+// de amostragem das raizes e recalculada a cada segundo pela taxa observada. Traces nao amostrados sao guardados ate a
+// raiz local terminar e so sao exportados se algum span teve erro (status ERROR ou evento exception) ou passou de
+// tracing.slow-threshold. A memoria e limitada pela fila de exportacao, pelo numero de traces pendentes e de spans por
+// trace, e pelo SpanLimits (atributos de no maximo 256 caracteres). A exportacao e feita em lotes, um export por vez (a
+// thread de exportacao e o forceFlush se revezam). tracing.spans{kind=head_sampled|tail_retained|discarded|queue_full},
+// tracing.sampler.probability e tracing.processor.overhead mostram o que foi exportado e quanto o processor custa nas
+// threads das requisicoes.
@@ -0,0 +1,189 @@
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.amqp.rabbit.connection.CachingConnectionFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Substitui o convertSendAndReceive bloqueante dos fallbacks: a requisicao entra em uma fila e a thread de quem chamou
+// recebe um CompletableFuture na hora. Uma unica thread publica tudo o que estiver na fila em lote, pelo mesmo canal,
+// e as respostas sao associadas ao futuro pelo correlation id.
+public class AsyncFallbackPublisher implements AutoCloseable, FallbackTransport.Listener {
+    private final FallbackTransport transport;
+    private final int maxBatchSize;
+    private final Duration replyTimeout;
+    private final BlockingQueue<FallbackTransport.Request> outbound;
+    private final ConcurrentMap<Long, CompletableFuture<String>> pending = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final Thread publisherThread;
+    private volatile boolean running = true;
+
+    private final LongAdder published = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder nacked = new LongAdder();
+    private final DistributionSummary batchSizes;
+
+    public AsyncFallbackPublisher(FallbackTransport transport, int maxPending, int maxBatchSize, Duration replyTimeout,
+                                  MeterRegistry meterRegistry) throws IOException {
+        this.transport = transport;
+        this.maxBatchSize = maxBatchSize;
+        this.replyTimeout = replyTimeout;
+        this.outbound = new ArrayBlockingQueue<>(maxPending);
+        this.batchSizes = DistributionSummary.builder("fallback.publisher.batch.size")
+            .register(meterRegistry);
+        FunctionCounter.builder("fallback.publisher.requests", published, LongAdder::sum)
+            .tag("kind", "published")
+            .register(meterRegistry);
+        FunctionCounter.builder("fallback.publisher.requests", rejected, LongAdder::sum)
+            .tag("kind", "rejected")
+            .register(meterRegistry);
+        FunctionCounter.builder("fallback.publisher.requests", nacked, LongAdder::sum)
+            .tag("kind", "nacked")
+            .register(meterRegistry);
+        Gauge.builder("fallback.publisher.pending", pending, Map::size)
+            .register(meterRegistry);
+
+        transport.start(this);
+        this.publisherThread = new Thread(this::publishLoop, "fallback-publisher");
+        this.publisherThread.setDaemon(true);
+        this.publisherThread.start();
+    }
+
+    public CompletableFuture<String> request(String queue, String payload) {
+        return request(queue, payload, Collections.emptyMap(), null);
+    }
+
+    // Nunca bloqueia: com a fila cheia o futuro ja volta com RejectedExecutionException
+    public CompletableFuture<String> request(String queue, String payload, Map<String, Object> headers, String expiration) {
+        long correlationId = correlationIds.incrementAndGet();
+        CompletableFuture<String> reply = new CompletableFuture<>();
+        pending.put(correlationId, reply);
+        if (!running || !outbound.offer(new FallbackTransport.Request(correlationId, queue, payload, headers, expiration))) {
+            pending.remove(correlationId);
+            rejected.increment();
+            reply.completeExceptionally(new RejectedExecutionException("Fallback publisher queue is full"));
+            return reply;
+        }
+        reply.orTimeout(replyTimeout.toMillis(), TimeUnit.MILLISECONDS)
+            .whenComplete((body, error) -> pending.remove(correlationId));
+        return reply;
+    }
+
+    private void publishLoop() {
+        List<FallbackTransport.Request> batch = new ArrayList<>(maxBatchSize);
+        while (running) {
+            try {
+                batch.add(outbound.take());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            outbound.drainTo(batch, maxBatchSize - 1);
+            int sent = 0;
+            try {
+                transport.publish(batch);
+                sent = batch.size();
+            } catch (FallbackTransport.PartialPublishException e) {
+                sent = e.getPublished();
+                failUnpublished(batch, sent, e);
+            } catch (IOException | RuntimeException e) {
+                failUnpublished(batch, 0, e);
+            }
+            if (sent > 0) {
+                published.add(sent);
+                batchSizes.record(sent);
+            }
+            batch.clear();
+        }
+    }
+
+    // As requisicoes antes de from ja sairam e seguem esperando a resposta
+    private void failUnpublished(List<FallbackTransport.Request> batch, int from, Exception error) {
+        for (int i = from; i < batch.size(); i++) {
+            fail(batch.get(i).getCorrelationId(), error);
+        }
+    }
+
+    @Override
+    public void onConfirm(long correlationId, boolean ack) {
+        if (!ack) {
+            nacked.increment();
+            fail(correlationId, new IllegalStateException("Broker rejected fallback request " + correlationId));
+        }
+    }
+
+    @Override
+    public void onFailure(long correlationId, Exception error) {
+        fail(correlationId, error);
+    }
+
+    @Override
+    public void onReply(long correlationId, String body) {
+        CompletableFuture<String> reply = pending.remove(correlationId);
+        if (reply != null) {
+            reply.complete(body);
+        }
+    }
+
+    private void fail(long correlationId, Throwable error) {
+        CompletableFuture<String> reply = pending.remove(correlationId);
+        if (reply != null) {
+            reply.completeExceptionally(error);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        publisherThread.interrupt();
+        transport.close();
+        IllegalStateException closed = new IllegalStateException("Fallback publisher closed");
+        for (Long correlationId : pending.keySet()) {
+            fail(correlationId, closed);
+        }
+    }
+}
+
+@Configuration
+class AsyncFallbackPublisherConfiguration {
+
+    // Conexao propria, aberta com as mesmas configuracoes do Spring: o canal fica em modo de confirmacao e e usado
+    // apenas pela thread do publisher, que reabre a conexao quando ela cai
+    @Bean(destroyMethod = "close")
+    public AsyncFallbackPublisher asyncFallbackPublisher(CachingConnectionFactory connectionFactory,
+                                                         MeterRegistry meterRegistry,
+                                                         @Value("${fallback.publisher.max-pending:10000}") int maxPending,
+                                                         @Value("${fallback.publisher.max-batch-size:100}") int maxBatchSize,
+                                                         @Value("${fallback.publisher.reply-timeout:5s}") Duration replyTimeout,
+                                                         @Value("${fallback.publisher.reconnect-delay:1s}") Duration reconnectDelay) throws Exception {
+        FallbackTransport transport = new RabbitFallbackTransport(connectionFactory.getRabbitConnectionFactory(),
+            "fallback-publisher", reconnectDelay);
+        return new AsyncFallbackPublisher(transport, maxPending, maxBatchSize, replyTimeout, meterRegistry);
+    }
+}
+
+//Neste exemplo, os fallbacks deixam de bloquear a thread da requisicao em um RPC justamente quando o sistema esta
+// degradado: request() devolve um CompletableFuture, a thread fallback-publisher publica em lote tudo o que estiver na
+// fila (ate max-batch-size) por um unico canal com publisher confirms, e as respostas chegam pelo direct reply-to e sao
+// entregues ao futuro certo pelo correlation id. Com a fila cheia (max-pending) a chamada falha na hora, sem bloquear.
+// As publicacoes usam mandatory, entao uma requisicao sem fila de destino falha assim que o broker a devolve, e se a
+// conexao cair o RabbitFallbackTransport falha o que estava sem confirmacao e reconecta na proxima publicacao. O
+// InMemoryFallbackBroker substitui o RabbitMQ em testes e benchmarks.
@@ -0,0 +1,36 @@
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+// Intervalo entre tentativas. O jitter espalha os retries de clientes que falharam ao mesmo tempo, em vez de todos
+// voltarem juntos a cada multiplo do intervalo base.
+@FunctionalInterface
+public interface Backoff {
+
+    // attempt comeca em 1; previousMillis e a espera anterior da mesma chamada (0 na primeira)
+    long delayMillis(int attempt, long previousMillis);
+
+    static Backoff exponential(Duration initial, double multiplier) {
+        long base = initial.toMillis();
+        return (attempt, previous) -> (long) (base * Math.pow(multiplier, attempt - 1));
+    }
+
+    // Aleatorio entre 0 e min(cap, base * 2^(attempt-1))
+    static Backoff fullJitter(Duration base, Duration cap) {
+        long baseMillis = base.toMillis();
+        long capMillis = cap.toMillis();
+        return (attempt, previous) -> {
+            long ceiling = Math.min(capMillis, baseMillis << Math.min(attempt - 1, 30));
+            return ThreadLocalRandom.current().nextLong(ceiling + 1);
+        };
+    }
+
+    // Aleatorio entre base e 3x a espera anterior, limitado a cap
+    static Backoff decorrelatedJitter(Duration base, Duration cap) {
+        long baseMillis = base.toMillis();
+        long capMillis = cap.toMillis();
+        return (attempt, previous) -> {
+            long upper = Math.max(baseMillis, previous * 3);
+            return Math.min(capMillis, ThreadLocalRandom.current().nextLong(baseMillis, upper + 1));
+        };
+    }
+}
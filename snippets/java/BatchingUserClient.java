@@ -0,0 +1,174 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.decorators.Decorators;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+public class BatchingUserClient implements AutoCloseable {
+    private final UserApi userApi;
+    private final CircuitBreaker circuitBreaker;
+    private final Bulkhead bulkhead;
+    private final int maxBatchSize;
+    private final Duration maxWait;
+    private final ScheduledExecutorService scheduler;
+    private final ThreadPoolExecutor sender;
+
+    private final Object lock = new Object();
+    private Map<Long, CompletableFuture<Object>> pending = new LinkedHashMap<>();
+    private ScheduledFuture<?> scheduledFlush;
+    private boolean closed;
+
+    public BatchingUserClient(UserApi userApi, CircuitBreaker circuitBreaker, Bulkhead bulkhead, int maxBatchSize, Duration maxWait) {
+        this.userApi = userApi;
+        this.circuitBreaker = circuitBreaker;
+        this.bulkhead = bulkhead;
+        this.maxBatchSize = maxBatchSize;
+        this.maxWait = maxWait;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> daemon(r, "user-api-batch-timer"));
+        // o envio roda fora da thread do timer para que um lote lento nao atrase a janela dos proximos. Mais lotes
+        // simultaneos do que o bulkhead admite seriam rejeitados por ele de qualquer forma, entao o pool tem o mesmo
+        // tamanho e uma fila curta; o que nao couber falha o lote em vez de criar threads sem limite
+        int maxConcurrentBatches = bulkhead.getBulkheadConfig().getMaxConcurrentCalls();
+        this.sender = new ThreadPoolExecutor(maxConcurrentBatches, maxConcurrentBatches, 30, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(maxConcurrentBatches), r -> daemon(r, "user-api-batch-sender"));
+        this.sender.allowCoreThreadTimeOut(true);
+    }
+
+    // Ids pedidos na mesma janela compartilham uma unica requisicao; o mesmo id repetido recebe o mesmo future
+    public CompletableFuture<Object> getUser(long id) {
+        Map<Long, CompletableFuture<Object>> batch = null;
+        CompletableFuture<Object> future;
+        synchronized (lock) {
+            if (closed) {
+                return CompletableFuture.failedFuture(new IllegalStateException("BatchingUserClient is closed"));
+            }
+            future = pending.get(id);
+            if (future != null) {
+                return future;
+            }
+            future = new CompletableFuture<>();
+            pending.put(id, future);
+            if (pending.size() >= maxBatchSize) {
+                batch = takeBatch();
+            } else if (pending.size() == 1) {
+                scheduledFlush = scheduler.schedule(this::flush, maxWait.toNanos(), TimeUnit.NANOSECONDS);
+            }
+        }
+        if (batch != null) {
+            dispatch(batch);
+        }
+        return future;
+    }
+
+    // Chamadas feitas depois do close falham na hora; o que ja estava pendente ainda e enviado
+    @Override
+    public void close() {
+        Map<Long, CompletableFuture<Object>> batch;
+        synchronized (lock) {
+            closed = true;
+            batch = takeBatch();
+        }
+        scheduler.shutdownNow();
+        dispatch(batch);
+        sender.shutdown();
+    }
+
+    private void flush() {
+        Map<Long, CompletableFuture<Object>> batch;
+        synchronized (lock) {
+            batch = takeBatch();
+        }
+        dispatch(batch);
+    }
+
+    private void dispatch(Map<Long, CompletableFuture<Object>> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        try {
+            sender.execute(() -> send(batch));
+        } catch (RejectedExecutionException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+        }
+    }
+
+    private Map<Long, CompletableFuture<Object>> takeBatch() {
+        Map<Long, CompletableFuture<Object>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        return batch;
+    }
+
+    // O lote inteiro consome uma permissao do bulkhead e conta como uma unica chamada no circuit breaker
+    private void send(Map<Long, CompletableFuture<Object>> batch) {
+        List<Long> ids = new ArrayList<>(batch.keySet());
+        Map<Long, Object> users;
+        try {
+            users = Decorators.ofSupplier(() -> userApi.getUsers(ids))
+                .withCircuitBreaker(circuitBreaker)
+                .withBulkhead(bulkhead)
+                .get();
+        } catch (RuntimeException e) {
+            batch.values().forEach(future -> future.completeExceptionally(e));
+            return;
+        }
+        batch.forEach((id, future) -> {
+            Object user = users.get(id);
+            if (user != null) {
+                future.complete(user);
+            } else {
+                future.completeExceptionally(new NoSuchElementException("User " + id + " not found"));
+            }
+        });
+    }
+
+    private static Thread daemon(Runnable runnable, String name) {
+        Thread thread = new Thread(runnable, name);
+        thread.setDaemon(true);
+        return thread;
+    }
+}
+
+@Configuration
+@ConditionalOnProperty(name = "user-api.batching.enabled", havingValue = "true")
+class BatchingUserClientConfiguration {
+
+    @Bean(destroyMethod = "close")
+    public BatchingUserClient batchingUserClient(UserApi userApi,
+                                                 CircuitBreakerRegistry circuitBreakerRegistry,
+                                                 BulkheadRegistry bulkheadRegistry,
+                                                 @Value("${user-api.batching.max-size:50}") int maxBatchSize,
+                                                 @Value("${user-api.batching.max-wait:5ms}") Duration maxWait) {
+        return new BatchingUserClient(userApi,
+            circuitBreakerRegistry.circuitBreaker("userCircuitBreaker"),
+            bulkheadRegistry.bulkhead("userBulkhead"),
+            maxBatchSize, maxWait);
+    }
+}
+
+//Neste exemplo, com user-api.batching.enabled=true os ids pedidos dentro de uma janela de tempo (max-wait) ou ate
+// atingir max-size sao enviados em uma unica requisicao para /users/batch. O resultado e distribuido de volta para o
+// CompletableFuture de cada chamador. O lote passa uma unica vez pelo userBulkhead e pelo userCircuitBreaker. O
+// userCache da CacheConfiguration carrega e recarrega os usuarios por este cliente quando ele esta habilitado.
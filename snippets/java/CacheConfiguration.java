@@ -1,8 +1,107 @@
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.CacheLoader;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.ResponseEntity;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
 @EnableCaching
 @Configuration
 public class CacheConfiguration {
+    // A chave e lida quando o bean e criado: sem DATA_ENCRYPTION_KEY o contexto falha com a mensagem do KeyProvider
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager("sensitiveDataCache");
+    public KeyProvider dataEncryptionKeys() {
+        return KeyProvider.fromEnvironment(DataEncryption.KEY_VARIABLE);
     }
-}
\ No newline at end of file
+
+    @Bean
+    public EncryptionEngine encryptionEngine(KeyProvider dataEncryptionKeys) {
+        return new EncryptionEngine(dataEncryptionKeys);
+    }
+
+    @Bean
+    public CacheManager cacheManager(MeterRegistry meterRegistry, UserApi userApi, EncryptionEngine encryptionEngine,
+                                     ObjectProvider<BatchingUserClient> batchingUserClient) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAllowNullValues(false);
+
+        // Entradas cifradas em repouso: o limite e pelo tamanho real de cada entrada e nao pela quantidade
+        cacheManager.registerCustomCache("sensitiveDataCache", monitor(meterRegistry, "sensitiveDataCache",
+            Caffeine.newBuilder()
+                .maximumWeight(64L * 1024 * 1024)
+                .weigher((Object key, Object value) -> ((EncryptedCache.EncryptedValue) value).footprint())
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .recordStats()
+                .build()));
+
+        // O valor ja chega cifrado (Base64 do AES-GCM), entao nao passa pelo EncryptedCache
+        cacheManager.registerCustomCache("encryptedSensitiveDataCache", monitor(meterRegistry, "encryptedSensitiveDataCache",
+            Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .recordStats()
+                .build()));
+
+        // Usuarios sao recarregados em background apos 1 minuto e expiram apos 5 minutos sem escrita
+        cacheManager.registerCustomCache("userCache", monitor(meterRegistry, "userCache",
+            Caffeine.newBuilder()
+                .maximumSize(100_000)
+                .expireAfterWrite(Duration.ofMinutes(5))
+                .refreshAfterWrite(Duration.ofMinutes(1))
+                .recordStats()
+                .build(userLoader(userApi, batchingUserClient.getIfAvailable()))));
+
+        return new EncryptingCacheManager(cacheManager, encryptionEngine, Set.of("sensitiveDataCache"), meterRegistry);
+    }
+
+    // Com user-api.batching.enabled=true as cargas e os refreshes do userCache entram nos lotes do BatchingUserClient
+    private static CacheLoader<Object, Object> userLoader(UserApi userApi, BatchingUserClient batchingUserClient) {
+        if (batchingUserClient == null) {
+            return id -> userApi.getUser((Long) id);
+        }
+        return new CacheLoader<>() {
+            @Override
+            public Object load(Object id) {
+                try {
+                    return asyncLoad(id, Runnable::run).join();
+                } catch (CompletionException e) {
+                    throw e.getCause() instanceof RuntimeException cause ? cause : e;
+                }
+            }
+
+            @Override
+            public CompletableFuture<Object> asyncLoad(Object id, Executor executor) {
+                return batchingUserClient.getUser((Long) id).<Object>thenApply(ResponseEntity::ok);
+            }
+
+            @Override
+            public CompletableFuture<Object> asyncReload(Object id, Object oldValue, Executor executor) {
+                return asyncLoad(id, executor);
+            }
+        };
+    }
+
+    private static Cache<Object, Object> monitor(MeterRegistry meterRegistry, String cacheName, Cache<Object, Object> cache) {
+        return CaffeineCacheMetrics.monitor(meterRegistry, cache, cacheName);
+    }
+}
+
+//Neste exemplo, o ConcurrentMapCacheManager foi substituido pelo CaffeineCacheManager. O Caffeine limita cada cache
+// por tamanho e usa a politica W-TinyLFU, que so admite uma nova entrada quando ela e mais frequente que a vitima,
+// protegendo o cache contra varreduras. Cada cache tem seu proprio TTL e o userCache tambem faz refreshAfterWrite.
+// O sensitiveDataCache guarda os valores cifrados (EncryptedCache) e registra o tamanho de cada entrada em
+// cache.entry.size; o encryptedSensitiveDataCache guarda o Base64 devolvido por getEncryptedSensitiveData, cifrado uma
+// vez por miss.
+// O CaffeineCacheMetrics publica por cache os contadores cache.gets (hit/miss), cache.evictions e cache.load.duration.
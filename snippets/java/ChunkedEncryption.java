@@ -0,0 +1,202 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+
+public class ChunkedEncryption {
+    public static final int DEFAULT_CHUNK_SIZE = 64 * 1024;
+    // O tamanho do chunk vem do cabecalho, que so e autenticado junto com o primeiro chunk: e validado antes de alocar
+    public static final int MAX_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final int MAGIC = 0x43454E43; // "CENC"
+    private static final byte VERSION = 1;
+    private static final int PREFIX_LENGTH = 7;
+    private static final int HEADER_LENGTH = 4 + 1 + 1 + 4 + PREFIX_LENGTH;
+    private static final int TAG_LENGTH = EncryptionEngine.TAG_LENGTH;
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final KeyProvider keyProvider;
+    private final int chunkSize;
+
+    public ChunkedEncryption(KeyProvider keyProvider) {
+        this(keyProvider, DEFAULT_CHUNK_SIZE);
+    }
+
+    public ChunkedEncryption(KeyProvider keyProvider, int chunkSize) {
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        this.keyProvider = keyProvider;
+        this.chunkSize = chunkSize;
+    }
+
+    public void encrypt(InputStream in, OutputStream out) throws IOException {
+        encrypt(Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    public void decrypt(InputStream in, OutputStream out) throws IOException {
+        decrypt(Channels.newChannel(in), Channels.newChannel(out));
+    }
+
+    // Formato: [magic][versao][id da chave][tamanho do chunk][prefixo do nonce] seguido de chunks de tamanho fixo,
+    // cada um com sua propria tag. O nonce de cada chunk e prefixo + indice + flag de ultimo chunk, o que impede
+    // reordenar, duplicar ou truncar chunks sem que a autenticacao falhe.
+    public void encrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        byte keyId = keyProvider.currentKeyId();
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        RANDOM.nextBytes(prefix);
+        ByteBuffer header = header(keyId, chunkSize, prefix);
+        writeFully(out, header.duplicate());
+
+        Cipher cipher = newCipher();
+        ByteBuffer plain = ByteBuffer.allocate(chunkSize + 1);
+        ByteBuffer encrypted = ByteBuffer.allocate(chunkSize + TAG_LENGTH);
+        boolean last = false;
+        for (int index = 0; !last; index++) {
+            readFully(in, plain);
+            last = plain.position() <= chunkSize;
+            int length = Math.min(plain.position(), chunkSize);
+            plain.flip().limit(length);
+            encrypted.clear();
+            process(cipher, Cipher.ENCRYPT_MODE, keyId, header, prefix, index, last, plain, encrypted);
+            encrypted.flip();
+            writeFully(out, encrypted);
+            // o byte lido a mais pertence ao proximo chunk
+            plain.limit(plain.capacity()).position(length);
+            plain.compact();
+        }
+    }
+
+    public void decrypt(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        readFully(in, header);
+        header.flip();
+        Header parsed = parseHeader(header);
+
+        Cipher cipher = newCipher();
+        ByteBuffer encrypted = ByteBuffer.allocate(parsed.chunkSize + TAG_LENGTH + 1);
+        ByteBuffer plain = ByteBuffer.allocate(parsed.chunkSize);
+        boolean last = false;
+        for (int index = 0; !last; index++) {
+            readFully(in, encrypted);
+            last = encrypted.position() <= parsed.chunkSize + TAG_LENGTH;
+            int length = Math.min(encrypted.position(), parsed.chunkSize + TAG_LENGTH);
+            encrypted.flip().limit(length);
+            plain.clear();
+            process(cipher, Cipher.DECRYPT_MODE, parsed.keyId, header, parsed.prefix, index, last, encrypted, plain);
+            plain.flip();
+            writeFully(out, plain);
+            encrypted.limit(encrypted.capacity()).position(length);
+            encrypted.compact();
+        }
+    }
+
+    // Acesso aleatorio: como todos os chunks (exceto o ultimo) tem o mesmo tamanho, o offset e calculado direto
+    public byte[] decryptChunk(SeekableByteChannel channel, long index) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        channel.position(0);
+        readFully(channel, header);
+        header.flip();
+        Header parsed = parseHeader(header);
+
+        long encryptedChunkSize = parsed.chunkSize + TAG_LENGTH;
+        long offset = HEADER_LENGTH + index * encryptedChunkSize;
+        if (index < 0 || index > Integer.MAX_VALUE || offset >= channel.size()) {
+            throw new IllegalArgumentException("Chunk " + index + " does not exist");
+        }
+        int length = (int) Math.min(encryptedChunkSize, channel.size() - offset);
+        boolean last = offset + length == channel.size();
+
+        ByteBuffer encrypted = ByteBuffer.allocate(length);
+        channel.position(offset);
+        readFully(channel, encrypted);
+        encrypted.flip();
+        ByteBuffer plain = ByteBuffer.allocate(Math.max(0, length - TAG_LENGTH));
+        process(newCipher(), Cipher.DECRYPT_MODE, parsed.keyId, header, parsed.prefix, (int) index, last, encrypted, plain);
+        return plain.array();
+    }
+
+    private void process(Cipher cipher, int mode, byte keyId, ByteBuffer header, byte[] prefix, int index, boolean last,
+                         ByteBuffer in, ByteBuffer out) {
+        byte[] nonce = new byte[EncryptionEngine.NONCE_LENGTH];
+        System.arraycopy(prefix, 0, nonce, 0, PREFIX_LENGTH);
+        nonce[7] = (byte) (index >>> 24);
+        nonce[8] = (byte) (index >>> 16);
+        nonce[9] = (byte) (index >>> 8);
+        nonce[10] = (byte) index;
+        nonce[11] = (byte) (last ? 1 : 0);
+        try {
+            cipher.init(mode, keyProvider.key(keyId), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            cipher.updateAAD(header.duplicate().rewind());
+            cipher.doFinal(in, out);
+        } catch (AEADBadTagException e) {
+            throw new IllegalArgumentException("Could not decrypt chunk " + index + ": authentication failed", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not process chunk " + index, e);
+        }
+    }
+
+    private static ByteBuffer header(byte keyId, int chunkSize, byte[] prefix) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).put(VERSION).put(keyId).putInt(chunkSize).put(prefix);
+        return header.flip();
+    }
+
+    private static Header parseHeader(ByteBuffer header) {
+        if (header.remaining() < HEADER_LENGTH || header.getInt(0) != MAGIC || header.get(4) != VERSION) {
+            throw new IllegalArgumentException("Could not decrypt data: invalid header");
+        }
+        int chunkSize = header.getInt(6);
+        if (chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Could not decrypt data: invalid chunk size " + chunkSize);
+        }
+        byte[] prefix = new byte[PREFIX_LENGTH];
+        header.get(10, prefix);
+        return new Header(header.get(5), chunkSize, prefix);
+    }
+
+    private static Cipher newCipher() {
+        try {
+            return Cipher.getInstance("AES/GCM/NoPadding");
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not create AES/GCM cipher", e);
+        }
+    }
+
+    private static void readFully(ReadableByteChannel in, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining() && in.read(buffer) >= 0) {
+            // continua ate encher o buffer ou chegar ao fim do canal
+        }
+    }
+
+    private static void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private static final class Header {
+        private final byte keyId;
+        private final int chunkSize;
+        private final byte[] prefix;
+
+        Header(byte keyId, int chunkSize, byte[] prefix) {
+            this.keyId = keyId;
+            this.chunkSize = chunkSize;
+            this.prefix = prefix;
+        }
+    }
+}
+
+//Neste exemplo, a exportacao de dados sensiveis e cifrada em chunks de tamanho fixo (64 KiB por padrao), entao a
+// memoria usada e constante independente do tamanho do payload. Os metodos aceitam InputStream/OutputStream ou os
+// canais NIO, e decryptChunk decifra um unico chunk a partir de um SeekableByteChannel (ex.: FileChannel).
@@ -0,0 +1,493 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.CRC32C;
+
+// Log de compensacoes pendentes, append-only, em segmentos mapeados em memoria. begin grava a intencao antes do efeito
+// colateral e so retorna quando ela esta em disco; complete marca a compensacao como concluida. No startup as
+// pendentes sao devolvidas por replay, entao o tratamento precisa ser idempotente (complete pode nao ter chegado ao
+// disco antes de uma queda). Cada registro leva o owner que o gravou, e cada servico refaz so as proprias compensacoes.
+public final class CompensationLog implements MeterBinder, AutoCloseable {
+    private static final int SEGMENT_MAGIC = 0x434f4d50;
+    private static final int SEGMENT_HEADER = 16;
+    // [int tamanho do registro][int crc32c][byte tipo][long txId][payload]; o payload de um PENDING comeca com
+    // [byte tamanho do owner][owner em UTF-8]
+    private static final int RECORD_HEADER = 17;
+    private static final int MAX_OWNER_LENGTH = 255;
+    private static final byte PENDING = 1;
+    private static final byte COMPLETED = 2;
+    private static final double COMPACT_BELOW_LIVE_RATIO = 0.25;
+
+    private final Path directory;
+    private final int segmentSize;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Deque<Segment> sealed = new ArrayDeque<>();
+    private final Map<Long, Entry> live = new HashMap<>();
+    private final Map<Long, byte[]> recovered;
+    private final AtomicLong txIds;
+    private final LinkedBlockingQueue<Waiter> waiters = new LinkedBlockingQueue<>();
+    private final CRC32C crc = new CRC32C();
+    private final Thread flusher;
+    private volatile boolean running = true;
+    private volatile long durablePosition;
+    private Segment active;
+    private long lastTxIdSeen;
+
+    private final LongAdder fsyncs = new LongAdder();
+    private final LongAdder appended = new LongAdder();
+
+    private CompensationLog(Path directory, int segmentSize) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        Files.createDirectories(directory);
+        this.recovered = recover();
+        this.txIds = new AtomicLong(lastTxIdSeen);
+        this.durablePosition = active.logicalPosition();
+        this.flusher = new Thread(this::flushLoop, "compensation-log-flusher");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    public static CompensationLog open(Path directory, int segmentSize) throws IOException {
+        return new CompensationLog(directory, segmentSize);
+    }
+
+    // Grava a compensacao e completa o futuro com o txId quando o registro estiver em disco. Varias chamadas
+    // concorrentes sao cobertas pelo mesmo force (group commit).
+    public CompletableFuture<Long> beginAsync(String owner, byte[] data) {
+        byte[] payload = encode(owner, data);
+        if (RECORD_HEADER + payload.length > segmentSize - SEGMENT_HEADER) {
+            throw new IllegalArgumentException("Payload larger than a segment");
+        }
+        long txId = txIds.incrementAndGet();
+        CompletableFuture<Long> durable = new CompletableFuture<>();
+        lock.lock();
+        try {
+            ensureOpen();
+            Segment segment = append(PENDING, txId, payload);
+            live.put(txId, new Entry(segment, payload));
+            segment.live++;
+            waiters.add(new Waiter(active.logicalPosition(), txId, durable));
+        } finally {
+            lock.unlock();
+        }
+        return durable;
+    }
+
+    public long begin(String owner, byte[] data) {
+        return beginAsync(owner, data).join();
+    }
+
+    // Nao espera o force: se o registro se perder numa queda, a compensacao volta no replay e e executada de novo
+    public void complete(long txId) {
+        lock.lock();
+        try {
+            ensureOpen();
+            Entry entry = live.remove(txId);
+            if (entry == null) {
+                return;
+            }
+            append(COMPLETED, txId, null);
+            entry.segment.live--;
+            recovered.remove(txId);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // Compensacoes do owner que estavam pendentes quando o log foi aberto e ainda nao foram concluidas; o handler
+    // recebe os dados como foram passados para begin
+    public void replay(String owner, BiConsumer<Long, byte[]> handler) {
+        Map<Long, byte[]> snapshot;
+        lock.lock();
+        try {
+            snapshot = new LinkedHashMap<>(recovered);
+        } finally {
+            lock.unlock();
+        }
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        snapshot.forEach((txId, payload) -> {
+            int length = payload[0] & 0xff;
+            if (Arrays.equals(payload, 1, 1 + length, ownerBytes, 0, ownerBytes.length)) {
+                handler.accept(txId, Arrays.copyOfRange(payload, 1 + length, payload.length));
+            }
+        });
+    }
+
+    private static byte[] encode(String owner, byte[] data) {
+        byte[] ownerBytes = owner.getBytes(StandardCharsets.UTF_8);
+        if (ownerBytes.length == 0 || ownerBytes.length > MAX_OWNER_LENGTH) {
+            throw new IllegalArgumentException("Owner must have between 1 and " + MAX_OWNER_LENGTH + " bytes");
+        }
+        byte[] payload = new byte[1 + ownerBytes.length + data.length];
+        payload[0] = (byte) ownerBytes.length;
+        System.arraycopy(ownerBytes, 0, payload, 1, ownerBytes.length);
+        System.arraycopy(data, 0, payload, 1 + ownerBytes.length, data.length);
+        return payload;
+    }
+
+    public int pendingCount() {
+        lock.lock();
+        try {
+            return live.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Segment append(byte type, long txId, byte[] payload) {
+        int length = RECORD_HEADER + (payload == null ? 0 : payload.length);
+        if (active.position + length > segmentSize) {
+            roll(length);
+            if (active.position + length > segmentSize) {
+                // roll deixa espaco para o registro, entao isto so acontece com um registro maior que um segmento
+                throw new IllegalStateException("Record of " + length + " bytes does not fit in a segment");
+            }
+        }
+        MappedByteBuffer buffer = active.buffer;
+        int start = active.position;
+        buffer.position(start + 8);
+        buffer.put(type).putLong(txId);
+        if (payload != null) {
+            buffer.put(payload);
+        }
+        crc.reset();
+        crc.update(buffer.duplicate().position(start + 8).limit(start + length));
+        buffer.putInt(start + 4, (int) crc.getValue());
+        // o tamanho e gravado por ultimo: um registro incompleto aparece como fim do segmento no replay
+        buffer.putInt(start, length);
+        active.position = start + length;
+        active.records++;
+        appended.increment();
+        return active;
+    }
+
+    // Chamado com o lock: o segmento cheio vai para disco inteiro antes de sair de uso. A compactacao deixa reserved
+    // bytes livres no segmento novo para o registro que provocou o roll.
+    private void roll(int reserved) {
+        Segment previous = active;
+        previous.buffer.force();
+        fsyncs.increment();
+        durablePosition = previous.logicalPosition();
+        sealed.addLast(previous);
+        try {
+            active = Segment.create(directory, previous.id + 1, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        compact(reserved);
+    }
+
+    // Segmentos so sao removidos do mais antigo para o mais novo: apagar um segmento mais novo poderia levar junto o
+    // COMPLETED de uma entrada cujo PENDING continua num segmento mais antigo. Pendentes de um segmento quase vazio
+    // sao copiadas para o segmento ativo antes de ele ser apagado.
+    private void compact(int reserved) {
+        while (!sealed.isEmpty()) {
+            Segment oldest = sealed.peekFirst();
+            if (oldest.live > oldest.records * COMPACT_BELOW_LIVE_RATIO) {
+                return;
+            }
+            sealed.pollFirst();
+            if (oldest.live > 0) {
+                List<Map.Entry<Long, Entry>> moving = new ArrayList<>();
+                for (Map.Entry<Long, Entry> e : live.entrySet()) {
+                    if (e.getValue().segment == oldest) {
+                        moving.add(e);
+                    }
+                }
+                for (Map.Entry<Long, Entry> e : moving) {
+                    Segment target = active;
+                    if (target.position + RECORD_HEADER + e.getValue().payload.length + reserved > segmentSize) {
+                        // nao cabe: mantem o segmento e tenta de novo no proximo roll
+                        sealed.addFirst(oldest);
+                        return;
+                    }
+                    append(PENDING, e.getKey(), e.getValue().payload);
+                    e.getValue().segment = target;
+                    target.live++;
+                    oldest.live--;
+                }
+                active.buffer.force();
+                fsyncs.increment();
+            }
+            oldest.delete();
+        }
+    }
+
+    // Group commit: cada force cobre tudo o que foi gravado ate ali, e libera de uma vez todos os que esperavam
+    private void flushLoop() {
+        while (running) {
+            Waiter first;
+            try {
+                first = waiters.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            Segment segment;
+            int from;
+            int to;
+            long target;
+            lock.lock();
+            try {
+                segment = active;
+                from = segment.forced;
+                to = segment.position;
+                target = segment.logicalPosition();
+                segment.forced = to;
+            } finally {
+                lock.unlock();
+            }
+            if (to > from) {
+                segment.buffer.force(from, to - from);
+                fsyncs.increment();
+            }
+            durablePosition = Math.max(durablePosition, target);
+            first.durable.complete(first.txId);
+            Waiter next;
+            while ((next = waiters.peek()) != null && next.position <= durablePosition) {
+                waiters.poll();
+                next.durable.complete(next.txId);
+            }
+        }
+    }
+
+    // Le os segmentos em ordem, valida o crc de cada registro e para no primeiro registro invalido (escrita
+    // interrompida por uma queda); o ultimo segmento vira o ativo, com o restante zerado
+    private Map<Long, byte[]> recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> list = Files.list(directory)) {
+            files = list.filter(p -> p.getFileName().toString().endsWith(".log")).sorted().collect(Collectors.toList());
+        }
+        Map<Long, byte[]> pending = new LinkedHashMap<>();
+        List<Segment> segments = new ArrayList<>();
+        for (Path file : files) {
+            Segment segment = Segment.open(file, segmentSize, file.equals(files.get(files.size() - 1)));
+            MappedByteBuffer buffer = segment.buffer;
+            int position = SEGMENT_HEADER;
+            while (position + RECORD_HEADER <= segmentSize) {
+                int length = buffer.getInt(position);
+                if (length < RECORD_HEADER || position + length > segmentSize) {
+                    break;
+                }
+                crc.reset();
+                crc.update(buffer.duplicate().position(position + 8).limit(position + length));
+                if ((int) crc.getValue() != buffer.getInt(position + 4)) {
+                    break;
+                }
+                byte type = buffer.get(position + 8);
+                long txId = buffer.getLong(position + 9);
+                lastTxIdSeen = Math.max(lastTxIdSeen, txId);
+                segment.records++;
+                if (type == PENDING) {
+                    byte[] payload = new byte[length - RECORD_HEADER];
+                    buffer.get(position + RECORD_HEADER, payload);
+                    pending.put(txId, payload);
+                    Entry previous = live.put(txId, new Entry(segment, payload));
+                    if (previous != null) {
+                        previous.segment.live--;
+                    }
+                    segment.live++;
+                } else {
+                    pending.remove(txId);
+                    Entry entry = live.remove(txId);
+                    if (entry != null) {
+                        entry.segment.live--;
+                    }
+                }
+                position += length;
+            }
+            segment.position = position;
+            segment.forced = position;
+            segments.add(segment);
+        }
+        if (segments.isEmpty()) {
+            active = Segment.create(directory, 0, segmentSize);
+        } else {
+            active = segments.remove(segments.size() - 1);
+            for (int i = active.position; i < segmentSize; i++) {
+                active.buffer.put(i, (byte) 0);
+            }
+            active.buffer.force();
+            sealed.addAll(segments);
+            compact(0);
+        }
+        return pending;
+    }
+
+    private void ensureOpen() {
+        if (!running) {
+            throw new IllegalStateException("Compensation log is closed");
+        }
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("compensation.log.records", appended, LongAdder::sum)
+            .register(registry);
+        FunctionCounter.builder("compensation.log.fsyncs", fsyncs, LongAdder::sum)
+            .register(registry);
+        Gauge.builder("compensation.log.pending", this, CompensationLog::pendingCount)
+            .register(registry);
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            running = false;
+            active.buffer.force();
+        } finally {
+            lock.unlock();
+        }
+        flusher.interrupt();
+        Waiter waiter;
+        while ((waiter = waiters.poll()) != null) {
+            // o force acima ja cobriu todos os registros gravados
+            waiter.durable.complete(waiter.txId);
+        }
+    }
+
+    private static final class Segment {
+        private final long id;
+        private final Path file;
+        private final MappedByteBuffer buffer;
+        private int position = SEGMENT_HEADER;
+        private int forced = SEGMENT_HEADER;
+        private int records;
+        private int live;
+
+        private Segment(long id, Path file, MappedByteBuffer buffer) {
+            this.id = id;
+            this.file = file;
+            this.buffer = buffer;
+        }
+
+        static Segment create(Path directory, long id, int size) throws IOException {
+            Path file = directory.resolve(String.format("%020d.log", id));
+            return initialize(id, file, map(file, size));
+        }
+
+        // O cabecalho vai para disco antes do primeiro registro: sem ele o segmento nao seria reconhecido no startup
+        private static Segment initialize(long id, Path file, MappedByteBuffer buffer) {
+            buffer.putInt(0, SEGMENT_MAGIC).putLong(4, id);
+            buffer.force(0, SEGMENT_HEADER);
+            return new Segment(id, file, buffer);
+        }
+
+        // Um ultimo segmento todo zerado e um create interrompido antes do cabecalho chegar ao disco: como nao tem
+        // registros, e inicializado de novo
+        static Segment open(Path file, int size, boolean last) throws IOException {
+            MappedByteBuffer buffer = map(file, size);
+            if (buffer.getInt(0) != SEGMENT_MAGIC) {
+                if (!last || !isZeroed(buffer, size)) {
+                    throw new IOException("Not a compensation log segment: " + file);
+                }
+                String name = file.getFileName().toString();
+                return initialize(Long.parseLong(name.substring(0, name.length() - ".log".length())), file, buffer);
+            }
+            return new Segment(buffer.getLong(4), file, buffer);
+        }
+
+        private static boolean isZeroed(MappedByteBuffer buffer, int size) {
+            int i = 0;
+            for (; i + Long.BYTES <= size; i += Long.BYTES) {
+                if (buffer.getLong(i) != 0) {
+                    return false;
+                }
+            }
+            for (; i < size; i++) {
+                if (buffer.get(i) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static MappedByteBuffer map(Path file, int size) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+        }
+
+        long logicalPosition() {
+            return id * Integer.MAX_VALUE + position;
+        }
+
+        void delete() {
+            try {
+                Files.deleteIfExists(file);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static final class Entry {
+        private Segment segment;
+        private final byte[] payload;
+
+        Entry(Segment segment, byte[] payload) {
+            this.segment = segment;
+            this.payload = payload;
+        }
+    }
+
+    private static final class Waiter {
+        private final long position;
+        private final long txId;
+        private final CompletableFuture<Long> durable;
+
+        Waiter(long position, long txId, CompletableFuture<Long> durable) {
+            this.position = position;
+            this.txId = txId;
+            this.durable = durable;
+        }
+    }
+}
+
+@Configuration
+class CompensationLogConfiguration {
+
+    // MeterBinder: o Spring Boot liga as metricas ao MeterRegistry
+    @Bean(destroyMethod = "close")
+    public CompensationLog compensationLog(@Value("${compensation.log.directory:data/compensation}") Path directory,
+                                           @Value("${compensation.log.segment-size:67108864}") int segmentSize) throws IOException {
+        return CompensationLog.open(directory, segmentSize);
+    }
+}
+
+//Neste exemplo, o CompensationLog substitui o @Transactional (JTA) nas compensacoes: cada compensacao pendente vira um
+// registro binario de 17 bytes + owner + payload, com crc32c, anexado a um segmento mapeado em memoria. Um unico force cobre
+// todos os registros gravados enquanto o anterior estava em andamento (group commit), entao o custo de durabilidade e
+// dividido entre as chamadas concorrentes. No startup, replay devolve as compensacoes que nao chegaram a ser concluidas,
+// filtradas pelo owner de quem chama, e quando um segmento enche os segmentos antigos sem pendentes (ou quase sem) sao
+// apagados.
@@ -1,7 +1,8 @@
 import java.security.KeyPair;
 import java.security.KeyPairGenerator;
 import javax.crypto.Cipher;
-import java.util.UUID;
+import java.util.Arrays;
+import java.util.Base64;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.interceptor.KeyGenerator;
 import org.springframework.stereotype.Component;
@@ -9,15 +10,34 @@ import org.springframework.stereotype.Service;
 import org.springframework.cache.CacheManager;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
-import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
 import org.springframework.context.annotation.EnableCaching;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import java.time.Duration;
+import org.springframework.beans.factory.annotation.Value;
 
 @Configuration
 @EnableCaching
 public class ConfiguracaoCache {
     @Bean
-    public CacheManager cacheManager() {
-        return new ConcurrentMapCacheManager("dadosSensiveisCache");
+    public CacheManager cacheManager(MeterRegistry meterRegistry) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager();
+        cacheManager.setAllowNullValues(false);
+        // Cache limitado por tamanho (W-TinyLFU) com TTL proprio e metricas de hit/miss/eviction/load
+        cacheManager.registerCustomCache("dadosSensiveisCache", CaffeineCacheMetrics.monitor(meterRegistry,
+            Caffeine.newBuilder()
+                .maximumSize(10_000)
+                .expireAfterWrite(Duration.ofMinutes(10))
+                .recordStats()
+                .build(), "dadosSensiveisCache"));
+        return cacheManager;
+    }
+
+    @Bean
+    public TokenizationVault tokenizationVault(@Value("${tokenization.secret}") String segredo, EncryptionEngine encryptionEngine) {
+        return new TokenizationVault(Base64.getDecoder().decode(segredo), encryptionEngine);
     }
 }
 
@@ -45,15 +65,28 @@ public Object generate(Object target, Method method, Object... params) {
 
 @Component
 public class TokenizationKeyGenerator implements KeyGenerator {
+    private final TokenizationVault vault;
+
+    public TokenizationKeyGenerator(TokenizationVault vault) {
+        this.vault = vault;
+    }
+
     @Override
 public Object generate(Object target, Method method, Object... params) {
-        return UUID.randomUUID().toString();
+        // O mesmo parametro sempre gera o mesmo token, que pode ser resolvido de volta com vault.detokenize. Com o
+        // cofre cheio a chave continua a mesma, so deixa de ser resolvivel
+        String value = params.length == 1 ? String.valueOf(params[0]) : Arrays.deepToString(params);
+        try {
+            return vault.tokenize(value);
+        } catch (TokenizationVault.FullException e) {
+            return vault.tokenOf(value);
+        }
     }
 }
 
 @Service
 public class DadosSensiveisService {
-    @Cacheable(value="dadosSensiveisCache", keyGenerator="RSAEncryptionKeyGenerator")
+    @Cacheable(value="dadosSensiveisCache", keyGenerator="hmacKeyGenerator")
 public String obterDadosSensiveis(String dados) {
         // lógica de obtenção de dados sensíveis
     return dados;
@@ -1,27 +1,61 @@
-import javax.crypto.Cipher;
-import javax.crypto.spec.SecretKeySpec;
-import org.springframework.util.Base64Utils;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
 
 public class DataEncryption {
-    private static final String ALGORITHM = "AES";
-    private static final byte[] keyValue =
-        new byte[] { 'T', 'h', 'e', 'B', 'e', 's', 't',
-                      'S', 'e', 'c', 'r','e', 't', 'K', 'e', 'y' };
-
-    public static String encryptData(String data) throws Exception {
-        SecretKeySpec key = new SecretKeySpec(keyValue, ALGORITHM);
-        Cipher c = Cipher.getInstance(ALGORITHM);
-        c.init(Cipher.ENCRYPT_MODE, key);
-        byte[] encVal = c.doFinal(data.getBytes());
-        return Base64Utils.encodeToString(encVal);
+    public static final String KEY_VARIABLE = "DATA_ENCRYPTION_KEY";
+
+    // Carregado no primeiro uso, e nao no inicializador estatico: sem a variavel de ambiente a chamada falha com uma
+    // IllegalStateException explicando o problema, em vez de um ExceptionInInitializerError ao carregar a classe
+    private static volatile Engines engines;
+
+    public static EncryptionEngine engine() {
+        return engines().engine;
+    }
+
+    public static String encryptData(String data) {
+        byte[] encVal = engine().encrypt(data.getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encVal);
     }
 
-    public static String decryptData(String encryptedData) throws Exception {
-        SecretKeySpec key = new SecretKeySpec(keyValue, ALGORITHM);
-        Cipher c = Cipher.getInstance(ALGORITHM);
-        c.init(Cipher.DECRYPT_MODE, key);
-        byte[] decordedValue = Base64Utils.decodeFromString(encryptedData);
-        byte[] decValue = c.doFinal(decordedValue);
-        return new String(decValue);
+    public static String decryptData(String encryptedData) {
+        byte[] decValue = engine().decrypt(Base64.getDecoder().decode(encryptedData));
+        return new String(decValue, StandardCharsets.UTF_8);
+    }
+
+    // Para payloads grandes (ex.: exportacao de usuarios), sem carregar o conteudo inteiro na memoria
+    public static void encryptStream(InputStream in, OutputStream out) throws IOException {
+        engines().streaming.encrypt(in, out);
+    }
+
+    public static void decryptStream(InputStream in, OutputStream out) throws IOException {
+        engines().streaming.decrypt(in, out);
+    }
+
+    private static Engines engines() {
+        Engines current = engines;
+        if (current == null) {
+            synchronized (DataEncryption.class) {
+                current = engines;
+                if (current == null) {
+                    KeyProvider keys = KeyProvider.fromEnvironment(KEY_VARIABLE);
+                    current = new Engines(new EncryptionEngine(keys), new ChunkedEncryption(keys));
+                    engines = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static final class Engines {
+        private final EncryptionEngine engine;
+        private final ChunkedEncryption streaming;
+
+        private Engines(EncryptionEngine engine, ChunkedEncryption streaming) {
+            this.engine = engine;
+            this.streaming = streaming;
+        }
     }
 }
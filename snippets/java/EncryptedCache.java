@@ -0,0 +1,162 @@
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+
+public class EncryptedCache implements Cache {
+    private static final byte STRING = 'S';
+    private static final byte BYTES = 'B';
+    private static final byte SERIALIZED = 'J';
+
+    private final Cache delegate;
+    private final EncryptionEngine encryptionEngine;
+    private final DistributionSummary entrySize;
+
+    public EncryptedCache(Cache delegate, EncryptionEngine encryptionEngine, MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.encryptionEngine = encryptionEngine;
+        this.entrySize = DistributionSummary.builder("cache.entry.size")
+            .baseUnit("bytes")
+            .tag("cache", delegate.getName())
+            .register(meterRegistry);
+    }
+
+    @Override
+    public String getName() {
+        return delegate.getName();
+    }
+
+    @Override
+    public Object getNativeCache() {
+        return delegate.getNativeCache();
+    }
+
+    @Override
+    public ValueWrapper get(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        if (wrapper == null) {
+            return null;
+        }
+        // So decifra quando o valor for realmente lido
+        return () -> decode((EncryptedValue) wrapper.get());
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Class<T> type) {
+        ValueWrapper wrapper = get(key);
+        Object value = wrapper != null ? wrapper.get() : null;
+        if (value != null && type != null && !type.isInstance(value)) {
+            throw new IllegalStateException("Cached value is not of required type [" + type.getName() + "]: " + value);
+        }
+        return (T) value;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T get(Object key, Callable<T> valueLoader) {
+        EncryptedValue value = delegate.get(key, () -> encode(valueLoader.call()));
+        return (T) decode(value);
+    }
+
+    @Override
+    public void put(Object key, Object value) {
+        delegate.put(key, encode(value));
+    }
+
+    @Override
+    public void evict(Object key) {
+        delegate.evict(key);
+    }
+
+    @Override
+    public void clear() {
+        delegate.clear();
+    }
+
+    public int footprint(Object key) {
+        ValueWrapper wrapper = delegate.get(key);
+        return wrapper != null ? ((EncryptedValue) wrapper.get()).footprint() : 0;
+    }
+
+    // O cache nao aceita nulos (setAllowNullValues(false)); sem esta checagem o null virava um NPE em value.getClass()
+    private EncryptedValue encode(Object value) {
+        if (value == null) {
+            throw new IllegalArgumentException("Cache '" + getName() + "' does not store null values");
+        }
+        byte[] plaintext;
+        if (value instanceof String) {
+            plaintext = tagged(STRING, ((String) value).getBytes(StandardCharsets.UTF_8));
+        } else if (value instanceof byte[]) {
+            plaintext = tagged(BYTES, (byte[]) value);
+        } else if (value instanceof Serializable) {
+            plaintext = tagged(SERIALIZED, serialize(value));
+        } else {
+            throw new IllegalArgumentException("Cannot cache non-serializable value of type " + value.getClass().getName());
+        }
+        EncryptedValue encrypted = new EncryptedValue(encryptionEngine.encrypt(plaintext));
+        entrySize.record(encrypted.footprint());
+        return encrypted;
+    }
+
+    private Object decode(EncryptedValue value) {
+        byte[] plaintext = encryptionEngine.decrypt(value.ciphertext);
+        switch (plaintext[0]) {
+            case STRING:
+                return new String(plaintext, 1, plaintext.length - 1, StandardCharsets.UTF_8);
+            case BYTES:
+                return Arrays.copyOfRange(plaintext, 1, plaintext.length);
+            default:
+                return deserialize(plaintext);
+        }
+    }
+
+    private static byte[] tagged(byte tag, byte[] bytes) {
+        byte[] plaintext = new byte[bytes.length + 1];
+        plaintext[0] = tag;
+        System.arraycopy(bytes, 0, plaintext, 1, bytes.length);
+        return plaintext;
+    }
+
+    private static byte[] serialize(Object value) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Could not serialize cached value", e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] plaintext) {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(plaintext, 1, plaintext.length - 1))) {
+            return in.readObject();
+        } catch (IOException | ClassNotFoundException e) {
+            throw new IllegalStateException("Could not deserialize cached value", e);
+        }
+    }
+
+    public static final class EncryptedValue {
+        // cabecalho do objeto + referencia + cabecalho do array, em uma JVM de 64 bits com compressed oops
+        private static final int OVERHEAD = 16 + 16;
+
+        private final byte[] ciphertext;
+
+        EncryptedValue(byte[] ciphertext) {
+            this.ciphertext = ciphertext;
+        }
+
+        public int footprint() {
+            return OVERHEAD + ((ciphertext.length + 7) & ~7);
+        }
+    }
+}
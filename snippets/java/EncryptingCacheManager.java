@@ -0,0 +1,38 @@
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+
+import java.util.Collection;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+public class EncryptingCacheManager implements CacheManager {
+    private final CacheManager delegate;
+    private final EncryptionEngine encryptionEngine;
+    private final Set<String> encryptedCacheNames;
+    private final MeterRegistry meterRegistry;
+    private final ConcurrentMap<String, Cache> caches = new ConcurrentHashMap<>();
+
+    public EncryptingCacheManager(CacheManager delegate, EncryptionEngine encryptionEngine, Set<String> encryptedCacheNames,
+                                  MeterRegistry meterRegistry) {
+        this.delegate = delegate;
+        this.encryptionEngine = encryptionEngine;
+        this.encryptedCacheNames = encryptedCacheNames;
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public Cache getCache(String name) {
+        Cache cache = delegate.getCache(name);
+        if (cache == null || !encryptedCacheNames.contains(name)) {
+            return cache;
+        }
+        return caches.computeIfAbsent(name, n -> new EncryptedCache(cache, encryptionEngine, meterRegistry));
+    }
+
+    @Override
+    public Collection<String> getCacheNames() {
+        return delegate.getCacheNames();
+    }
+}
@@ -0,0 +1,136 @@
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.spec.GCMParameterSpec;
+import java.nio.ByteBuffer;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+public class EncryptionEngine {
+    public static final int NONCE_LENGTH = 12;
+    public static final int TAG_LENGTH = 16;
+    public static final int OVERHEAD = 1 + NONCE_LENGTH + TAG_LENGTH;
+
+    private static final String TRANSFORMATION = "AES/GCM/NoPadding";
+    private static final SecureRandom RANDOM = new SecureRandom();
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final KeyProvider keyProvider;
+    // Pool limitado e compartilhado por todas as threads: com virtual threads um ThreadLocal criaria um Cipher por chamada
+    private final BlockingQueue<CipherState> ciphers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public EncryptionEngine(KeyProvider keyProvider) {
+        this.keyProvider = keyProvider;
+    }
+
+    public static int ciphertextLength(int plaintextLength) {
+        return plaintextLength + OVERHEAD;
+    }
+
+    public byte[] encrypt(byte[] plaintext) {
+        byte[] out = new byte[ciphertextLength(plaintext.length)];
+        encrypt(ByteBuffer.wrap(plaintext), ByteBuffer.wrap(out));
+        return out;
+    }
+
+    public byte[] decrypt(byte[] ciphertext) {
+        if (ciphertext.length < OVERHEAD) {
+            throw new IllegalArgumentException("Could not decrypt data: ciphertext is too short");
+        }
+        byte[] out = new byte[ciphertext.length - OVERHEAD];
+        decrypt(ByteBuffer.wrap(ciphertext), ByteBuffer.wrap(out));
+        return out;
+    }
+
+    // Formato: [id da chave][nonce de 12 bytes][dados cifrados][tag de 16 bytes]
+    public int encrypt(ByteBuffer plaintext, ByteBuffer out) {
+        CipherState state = borrow();
+        byte keyId = keyProvider.currentKeyId();
+        byte[] nonce = state.nextNonce();
+        try {
+            state.cipher.init(Cipher.ENCRYPT_MODE, keyProvider.key(keyId), new GCMParameterSpec(TAG_LENGTH * 8, nonce));
+            out.put(keyId);
+            out.put(nonce);
+            return 1 + NONCE_LENGTH + state.cipher.doFinal(plaintext, out);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not encrypt data", e);
+        } finally {
+            ciphers.offer(state);
+        }
+    }
+
+    public int decrypt(ByteBuffer ciphertext, ByteBuffer out) {
+        CipherState state = borrow();
+        byte keyId = ciphertext.get();
+        ciphertext.get(state.receivedNonce);
+        try {
+            state.cipher.init(Cipher.DECRYPT_MODE, keyProvider.key(keyId), new GCMParameterSpec(TAG_LENGTH * 8, state.receivedNonce));
+            return state.cipher.doFinal(ciphertext, out);
+        } catch (AEADBadTagException e) {
+            throw new IllegalArgumentException("Could not decrypt data: authentication failed", e);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not decrypt data", e);
+        } finally {
+            ciphers.offer(state);
+        }
+    }
+
+    // Sem estado livre cria um novo; ao devolver, o que passar da capacidade do pool e descartado
+    private CipherState borrow() {
+        CipherState state = ciphers.poll();
+        return state != null ? state : new CipherState();
+    }
+
+    public List<byte[]> encryptAll(List<byte[]> plaintexts) {
+        List<byte[]> ciphertexts = new ArrayList<>(plaintexts.size());
+        for (byte[] plaintext : plaintexts) {
+            ciphertexts.add(encrypt(plaintext));
+        }
+        return ciphertexts;
+    }
+
+    public List<byte[]> decryptAll(List<byte[]> ciphertexts) {
+        List<byte[]> plaintexts = new ArrayList<>(ciphertexts.size());
+        for (byte[] ciphertext : ciphertexts) {
+            plaintexts.add(decrypt(ciphertext));
+        }
+        return plaintexts;
+    }
+
+    // Cipher reaproveitado enquanto estiver no pool. O nonce e um prefixo aleatorio de 8 bytes seguido de um contador
+    // de 4 bytes; quando o contador volta a zero um novo prefixo e sorteado, entao um nonce nunca se repete.
+    private static final class CipherState {
+        private final Cipher cipher;
+        private final byte[] nonce = new byte[NONCE_LENGTH];
+        private final byte[] receivedNonce = new byte[NONCE_LENGTH];
+        private int counter;
+
+        CipherState() {
+            try {
+                this.cipher = Cipher.getInstance(TRANSFORMATION);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not create " + TRANSFORMATION + " cipher", e);
+            }
+        }
+
+        byte[] nextNonce() {
+            if (counter == 0) {
+                RANDOM.nextBytes(nonce);
+            }
+            int value = counter++;
+            nonce[8] = (byte) (value >>> 24);
+            nonce[9] = (byte) (value >>> 16);
+            nonce[10] = (byte) (value >>> 8);
+            nonce[11] = (byte) value;
+            return nonce;
+        }
+    }
+}
+
+//Neste exemplo, o EncryptionEngine substitui o AES/ECB do DataEncryption por AES-GCM, que autentica os dados.
+// Os Ciphers ficam em um pool limitado, entao Cipher.getInstance nao e executado a cada chamada, nem em virtual threads.
+// A chave vem de um KeyProvider plugavel, e a API com byte[]/ByteBuffer evita as copias de String e Base64.
+// encryptAll/decryptAll processam muitos registros pequenos reaproveitando os Ciphers do pool.
@@ -0,0 +1,76 @@
+import java.io.IOException;
+import java.util.List;
+import java.util.Map;
+
+// Canal usado pelo AsyncFallbackPublisher: publica lotes de requisicoes e avisa, de forma assincrona, quando o broker
+// confirma cada publicacao e quando chega a resposta correspondente
+public interface FallbackTransport extends AutoCloseable {
+
+    void start(Listener listener) throws IOException;
+
+    // Chamado sempre pela mesma thread (a do publisher), entao a implementacao pode usar um unico canal. Se falhar no
+    // meio do lote, lanca PartialPublishException com quantas requisicoes do inicio do lote ja foram publicadas
+    void publish(List<Request> batch) throws IOException;
+
+    @Override
+    void close() throws IOException;
+
+    interface Listener {
+        void onConfirm(long correlationId, boolean ack);
+
+        // A requisicao ja publicada nao vai ter resposta: o broker a devolveu (sem fila para rotear) ou o canal caiu
+        // antes de confirma-la
+        void onFailure(long correlationId, Exception error);
+
+        void onReply(long correlationId, String body);
+    }
+
+    final class PartialPublishException extends IOException {
+        private final int published;
+
+        public PartialPublishException(int published, IOException cause) {
+            super("Published " + published + " requests of the batch before failing", cause);
+            this.published = published;
+        }
+
+        public int getPublished() {
+            return published;
+        }
+    }
+
+    final class Request {
+        private final long correlationId;
+        private final String queue;
+        private final String payload;
+        private final Map<String, Object> headers;
+        private final String expiration;
+
+        Request(long correlationId, String queue, String payload, Map<String, Object> headers, String expiration) {
+            this.correlationId = correlationId;
+            this.queue = queue;
+            this.payload = payload;
+            this.headers = headers;
+            this.expiration = expiration;
+        }
+
+        public long getCorrelationId() {
+            return correlationId;
+        }
+
+        public String getQueue() {
+            return queue;
+        }
+
+        public String getPayload() {
+            return payload;
+        }
+
+        public Map<String, Object> getHeaders() {
+            return headers;
+        }
+
+        public String getExpiration() {
+            return expiration;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import io.opentelemetry.context.Context;
+import org.slf4j.MDC;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Requer Java 21 (virtual threads). Se a chamada nao responder dentro do percentil observado (p95 por padrao), envia
+// uma segunda chamada identica e usa a primeira que tiver sucesso; a outra e cancelada.
+public class Hedger implements MeterBinder, AutoCloseable {
+    private static final int SAMPLES = 1024;
+    private static final int RECOMPUTE_EVERY = 256;
+    private static final long MILLI_TOKENS = 1000;
+
+    private final String name;
+    private final ExecutorService executor;
+    private final double percentile;
+    private final long minDelayNanos;
+    private final long maxDelayNanos;
+    private final long depositPerCall;
+    private final long maxBudget;
+
+    private final AtomicLongArray latencies = new AtomicLongArray(SAMPLES);
+    private final AtomicLong sampleCount = new AtomicLong();
+    private final AtomicLong budget;
+    private volatile long delayNanos;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedged = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder budgetExhausted = new LongAdder();
+
+    // budgetRatio limita as chamadas extras a uma fracao das chamadas (0.1 = no maximo 10% a mais de carga),
+    // com ate maxBurst chamadas extras acumuladas
+    public Hedger(String name, double percentile, Duration minDelay, Duration maxDelay, double budgetRatio, int maxBurst) {
+        this.name = name;
+        this.percentile = percentile;
+        this.minDelayNanos = minDelay.toNanos();
+        this.maxDelayNanos = maxDelay.toNanos();
+        this.depositPerCall = (long) (budgetRatio * MILLI_TOKENS);
+        this.maxBudget = maxBurst * MILLI_TOKENS;
+        this.budget = new AtomicLong(maxBudget);
+        this.delayNanos = maxDelayNanos;
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-hedge-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(factory);
+    }
+
+    public Duration getDelay() {
+        return Duration.ofNanos(delayNanos);
+    }
+
+    public <T> T executeSupplier(Supplier<T> supplier) {
+        calls.increment();
+        deposit();
+        ExecutorCompletionService<T> attempts = new ExecutorCompletionService<>(executor);
+        Callable<T> attempt = inCallerContext(supplier);
+        Future<T> primary = attempts.submit(attempt);
+        Future<T> hedge = null;
+        try {
+            Future<T> done = attempts.poll(delayNanos, TimeUnit.NANOSECONDS);
+            if (done == null) {
+                if (tryWithdraw()) {
+                    hedge = attempts.submit(attempt);
+                    hedged.increment();
+                } else {
+                    budgetExhausted.increment();
+                }
+                done = attempts.take();
+            }
+            int pending = hedge == null ? 0 : 1;
+            while (true) {
+                try {
+                    T result = done.get();
+                    if (done == hedge) {
+                        hedgeWins.increment();
+                    }
+                    return result;
+                } catch (ExecutionException e) {
+                    // a primeira a terminar falhou: espera a outra, que ainda pode ter sucesso
+                    if (pending == 0) {
+                        throw unwrap(e);
+                    }
+                    pending--;
+                    done = attempts.take();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the call", e);
+        } finally {
+            // interromper a virtual thread tambem interrompe o I/O bloqueante da chamada que perdeu
+            primary.cancel(true);
+            if (hedge != null) {
+                hedge.cancel(true);
+            }
+        }
+    }
+
+    // As tentativas rodam em virtual threads novas, que nao herdam o contexto do OpenTelemetry nem o MDC de quem chamou;
+    // sem isso os spans das chamadas remotas ficariam sem pai e os logs sem o trace id
+    private <T> Callable<T> inCallerContext(Supplier<T> supplier) {
+        Map<String, String> mdc = MDC.getCopyOfContextMap();
+        return Context.current().wrap(() -> {
+            if (mdc != null) {
+                MDC.setContextMap(mdc);
+            }
+            try {
+                return timed(supplier);
+            } finally {
+                MDC.clear();
+            }
+        });
+    }
+
+    private <T> T timed(Supplier<T> supplier) {
+        long start = System.nanoTime();
+        T result = supplier.get();
+        record(System.nanoTime() - start);
+        return result;
+    }
+
+    // Amostras em um buffer circular; a cada RECOMPUTE_EVERY amostras, a thread que gravou a ultima recalcula o atraso
+    private void record(long latencyNanos) {
+        long n = sampleCount.getAndIncrement();
+        latencies.set((int) (n % SAMPLES), latencyNanos);
+        if ((n + 1) % RECOMPUTE_EVERY == 0) {
+            int size = (int) Math.min(n + 1, SAMPLES);
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = latencies.get(i);
+            }
+            Arrays.sort(sorted);
+            long observed = sorted[(int) Math.min(size - 1, (long) Math.ceil(size * percentile) - 1)];
+            delayNanos = Math.max(minDelayNanos, Math.min(maxDelayNanos, observed));
+        }
+    }
+
+    private void deposit() {
+        long current;
+        do {
+            current = budget.get();
+            if (current >= maxBudget) {
+                return;
+            }
+        } while (!budget.compareAndSet(current, Math.min(maxBudget, current + depositPerCall)));
+    }
+
+    private boolean tryWithdraw() {
+        long current;
+        do {
+            current = budget.get();
+            if (current < MILLI_TOKENS) {
+                return false;
+            }
+        } while (!budget.compareAndSet(current, current - MILLI_TOKENS));
+        return true;
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return new IllegalStateException(cause);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("hedge.calls", calls, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "primary")
+            .register(registry);
+        FunctionCounter.builder("hedge.calls", hedged, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "hedged")
+            .register(registry);
+        FunctionCounter.builder("hedge.calls", hedgeWins, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "hedge_won")
+            .register(registry);
+        FunctionCounter.builder("hedge.calls", budgetExhausted, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "budget_exhausted")
+            .register(registry);
+        Gauge.builder("hedge.delay", this, hedger -> hedger.delayNanos / 1e9)
+            .tag("name", name)
+            .baseUnit("seconds")
+            .register(registry);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    // Um Hedger por ponto de chamada, com as mesmas configuracoes: cada endpoint tem sua propria distribuicao de
+    // latencia e seu proprio budget, e um endpoint lento nao empurra o atraso nem gasta o budget dos outros
+    public static final class Registry implements AutoCloseable {
+        private final MeterRegistry meterRegistry;
+        private final double percentile;
+        private final Duration minDelay;
+        private final Duration maxDelay;
+        private final double budgetRatio;
+        private final int maxBurst;
+        private final ConcurrentMap<String, Hedger> hedgers = new ConcurrentHashMap<>();
+
+        public Registry(MeterRegistry meterRegistry, double percentile, Duration minDelay, Duration maxDelay,
+                        double budgetRatio, int maxBurst) {
+            this.meterRegistry = meterRegistry;
+            this.percentile = percentile;
+            this.minDelay = minDelay;
+            this.maxDelay = maxDelay;
+            this.budgetRatio = budgetRatio;
+            this.maxBurst = maxBurst;
+        }
+
+        public Hedger hedger(String name) {
+            return hedgers.computeIfAbsent(name, key -> {
+                Hedger hedger = new Hedger(key, percentile, minDelay, maxDelay, budgetRatio, maxBurst);
+                hedger.bindTo(meterRegistry);
+                return hedger;
+            });
+        }
+
+        @Override
+        public void close() {
+            hedgers.values().forEach(Hedger::close);
+        }
+    }
+}
+
+//Neste exemplo, o Hedger reduz a latencia de cauda: em vez de esperar uma unica tentativa ate o TimeLimiter disparar em
+// 1000 ms, uma segunda chamada e enviada quando a primeira passa do p95 observado, e a que responder primeiro com
+// sucesso e usada. O budget (token bucket com deposito de budgetRatio por chamada) limita a carga extra enviada ao
+// servico remoto. O Hedger fica dentro do circuit breaker, que ve uma unica chamada logica (o cancelamento da tentativa
+// perdedora nao conta como falha), e fora do bulkhead: cada tentativa ocupa sua propria vaga, e sem vaga livre a
+// segunda tentativa falha na hora e o Hedger continua esperando a primeira. O contexto do trace e o MDC seguem para as
+// tentativas. Somente latencias de chamadas com sucesso entram no percentil, entao respostas de erro rapidas nao
+// reduzem o atraso.
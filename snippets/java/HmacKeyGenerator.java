@@ -0,0 +1,157 @@
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.interceptor.KeyGenerator;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.Serializable;
+import java.lang.reflect.Method;
+import java.security.GeneralSecurityException;
+import java.util.Base64;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+@Component("hmacKeyGenerator")
+public class HmacKeyGenerator implements KeyGenerator {
+    private static final String ALGORITHM = "HmacSHA256";
+
+    private static final byte NULL = 0;
+    private static final byte LONG = 1;
+    private static final byte STRING = 2;
+    private static final byte BYTES = 3;
+    private static final int POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final SecretKeySpec key;
+    // Pool limitado em vez de ThreadLocal: virtual threads nao sao reaproveitadas, entao um Mac por thread seria um Mac
+    // por chamada. Acima do limite o Hasher extra e simplesmente descartado.
+    private final BlockingQueue<Hasher> hashers = new ArrayBlockingQueue<>(POOL_SIZE);
+
+    public HmacKeyGenerator(@Value("${cache.key-generator.secret}") String base64Secret) {
+        this.key = new SecretKeySpec(Base64.getDecoder().decode(base64Secret), ALGORITHM);
+    }
+
+    @Override
+    public Object generate(Object target, Method method, Object... params) {
+        Hasher hasher = hashers.poll();
+        if (hasher == null) {
+            hasher = new Hasher(key);
+        }
+        HmacKey hmacKey = hasher.hash(params);
+        // so volta ao pool se o hash terminou; um Mac interrompido no meio de um update nao e reaproveitado
+        hashers.offer(hasher);
+        return hmacKey;
+    }
+
+    // Mac e buffers reaproveitados entre chamadas: nenhuma String intermediaria e criada para montar a chave
+    private static final class Hasher {
+        private final Mac mac;
+        private final byte[] scratch = new byte[256];
+        private final byte[] digest = new byte[32];
+
+        Hasher(SecretKeySpec key) {
+            try {
+                this.mac = Mac.getInstance(ALGORITHM);
+                this.mac.init(key);
+            } catch (GeneralSecurityException e) {
+                throw new IllegalStateException("Could not initialize " + ALGORITHM, e);
+            }
+        }
+
+        HmacKey hash(Object[] params) {
+            for (Object param : params) {
+                update(param);
+            }
+            try {
+                mac.doFinal(digest, 0);
+            } catch (ShortBufferException e) {
+                throw new IllegalStateException(e);
+            }
+            return new HmacKey(readLong(digest, 0), readLong(digest, 8));
+        }
+
+        private void update(Object param) {
+            if (param == null) {
+                mac.update(NULL);
+            } else if (param instanceof Long || param instanceof Integer || param instanceof Short || param instanceof Byte) {
+                mac.update(LONG);
+                updateLong(((Number) param).longValue());
+            } else if (param instanceof byte[]) {
+                byte[] bytes = (byte[]) param;
+                mac.update(BYTES);
+                updateLong(bytes.length);
+                mac.update(bytes);
+            } else {
+                CharSequence chars = param instanceof CharSequence ? (CharSequence) param : param.toString();
+                mac.update(STRING);
+                updateLong(chars.length());
+                updateChars(chars);
+            }
+        }
+
+        private void updateLong(long value) {
+            for (int i = 0; i < 8; i++) {
+                scratch[i] = (byte) (value >>> (56 - 8 * i));
+            }
+            mac.update(scratch, 0, 8);
+        }
+
+        private void updateChars(CharSequence chars) {
+            int pos = 0;
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                scratch[pos++] = (byte) (c >>> 8);
+                scratch[pos++] = (byte) c;
+                if (pos == scratch.length) {
+                    mac.update(scratch, 0, pos);
+                    pos = 0;
+                }
+            }
+            mac.update(scratch, 0, pos);
+        }
+
+        private static long readLong(byte[] bytes, int offset) {
+            long value = 0;
+            for (int i = 0; i < 8; i++) {
+                value = (value << 8) | (bytes[offset + i] & 0xFF);
+            }
+            return value;
+        }
+    }
+
+    public static final class HmacKey implements Serializable {
+        private final long high;
+        private final long low;
+
+        HmacKey(long high, long low) {
+            this.high = high;
+            this.low = low;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            }
+            if (!(other instanceof HmacKey)) {
+                return false;
+            }
+            HmacKey key = (HmacKey) other;
+            return high == key.high && low == key.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(high ^ low);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%016x%016x", high, low);
+        }
+    }
+}
+
+//Neste exemplo, a chave do cache e um HMAC-SHA256 (truncado em 128 bits) dos parametros do metodo. Ao contrario do
+// RSAEncryptionKeyGenerator, cujo padding PKCS#1 e aleatorio, a mesma entrada sempre gera a mesma chave, entao o
+// @Cacheable volta a ter hits, e o valor original nao aparece na chave. O segredo vem de cache.key-generator.secret.
@@ -0,0 +1,59 @@
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
+
+// Substituto em memoria do RabbitMQ para testes e benchmarks: confirma cada publicacao e responde com a funcao
+// registrada para a fila; publicacoes para uma fila sem resposta registrada recebem nack
+public class InMemoryFallbackBroker implements FallbackTransport {
+    private final Map<String, UnaryOperator<String>> responders = new ConcurrentHashMap<>();
+    private final ExecutorService consumers;
+    private final LongAdder batches = new LongAdder();
+    private volatile Listener listener;
+
+    public InMemoryFallbackBroker(int consumerThreads) {
+        this.consumers = Executors.newFixedThreadPool(consumerThreads, r -> {
+            Thread thread = new Thread(r, "in-memory-broker");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public InMemoryFallbackBroker respondTo(String queue, UnaryOperator<String> responder) {
+        responders.put(queue, responder);
+        return this;
+    }
+
+    public long publishedBatches() {
+        return batches.sum();
+    }
+
+    @Override
+    public void start(Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void publish(List<Request> batch) {
+        batches.increment();
+        for (Request request : batch) {
+            long correlationId = request.getCorrelationId();
+            UnaryOperator<String> responder = responders.get(request.getQueue());
+            String payload = request.getPayload();
+            consumers.execute(() -> {
+                listener.onConfirm(correlationId, responder != null);
+                if (responder != null) {
+                    listener.onReply(correlationId, responder.apply(payload));
+                }
+            });
+        }
+    }
+
+    @Override
+    public void close() {
+        consumers.shutdownNow();
+    }
+}
@@ -0,0 +1,48 @@
+import javax.crypto.SecretKey;
+import javax.crypto.spec.SecretKeySpec;
+import java.util.Base64;
+
+public interface KeyProvider {
+
+    // Identificador gravado em cada texto cifrado, permitindo rotacionar a chave sem perder os dados antigos
+    byte currentKeyId();
+
+    SecretKey key(byte keyId);
+
+    static KeyProvider of(byte keyId, byte[] aesKey) {
+        SecretKey key = new SecretKeySpec(aesKey, "AES");
+        return new KeyProvider() {
+            @Override
+            public byte currentKeyId() {
+                return keyId;
+            }
+
+            @Override
+            public SecretKey key(byte id) {
+                if (id != keyId) {
+                    throw new IllegalArgumentException("Unknown key id " + id);
+                }
+                return key;
+            }
+        };
+    }
+
+    static KeyProvider fromEnvironment(String variable) {
+        String value = System.getenv(variable);
+        if (value == null || value.isBlank()) {
+            throw new IllegalStateException("Environment variable " + variable
+                + " is not set; it must hold a Base64-encoded AES key of 16, 24 or 32 bytes");
+        }
+        byte[] aesKey;
+        try {
+            aesKey = Base64.getDecoder().decode(value.trim());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalStateException("Environment variable " + variable + " is not valid Base64", e);
+        }
+        if (aesKey.length != 16 && aesKey.length != 24 && aesKey.length != 32) {
+            throw new IllegalStateException("Environment variable " + variable + " holds a " + aesKey.length
+                + "-byte key; AES needs 16, 24 or 32 bytes");
+        }
+        return of((byte) 1, aesKey);
+    }
+}
@@ -0,0 +1,169 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+// Rate limiter com um token bucket por chave (o chamador), em uma tabela de enderecamento aberto de tamanho fixo.
+// Cada bucket e um unico long no formato GCRA (instante teorico da proxima chamada), entao acquire e um CAS.
+public class KeyedRateLimiter implements MeterBinder {
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int PROBES = 16;
+    private static final int FINGERPRINT_BITS = 16;
+    private static final long FINGERPRINT_MASK = (1L << FINGERPRINT_BITS) - 1;
+    private static final int TABLE_FULL = -2;
+
+    private final String name;
+    private final long emissionIntervalMicros;
+    private final long periodMicros;
+    private final long startNanos = System.nanoTime();
+    private final int mask;
+    // slot i ocupa as posicoes 2i (chave) e 2i+1 (estado), para que os dois fiquem na mesma linha de cache
+    private final AtomicLongArray table;
+
+    private final LongAdder permitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder tableFull = new LongAdder();
+
+    public KeyedRateLimiter(String name, int limitForPeriod, Duration limitRefreshPeriod, int maxKeys) {
+        this.name = name;
+        this.periodMicros = limitRefreshPeriod.toNanos() / 1000;
+        this.emissionIntervalMicros = periodMicros / limitForPeriod;
+        if (emissionIntervalMicros < 1 || maxKeys < PROBES) {
+            throw new IllegalArgumentException("limitForPeriod is too high for the refresh period or maxKeys is too small");
+        }
+        int capacity = Integer.highestOneBit(maxKeys - 1) << 1;
+        this.mask = capacity - 1;
+        this.table = new AtomicLongArray(capacity * 2);
+        for (int i = 0; i < capacity; i++) {
+            table.set(i * 2, EMPTY);
+        }
+    }
+
+    // Memoria fixa: 16 bytes por slot, definida no construtor e nunca alterada
+    public int capacity() {
+        return mask + 1;
+    }
+
+    // Chaves textuais (usuario autenticado, endereco) viram um hash de 64 bits; com milhoes de chaves a chance de duas
+    // caberem no mesmo bucket e desprezivel
+    public boolean tryAcquire(CharSequence key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash = (hash ^ key.charAt(i)) * 0x100000001b3L;
+        }
+        return tryAcquire(hash == EMPTY ? 0 : hash);
+    }
+
+    public boolean tryAcquire(long key) {
+        if (key == EMPTY) {
+            throw new IllegalArgumentException("Key " + EMPTY + " is reserved");
+        }
+        long hash = mix(key);
+        long fingerprint = hash >>> (64 - FINGERPRINT_BITS);
+        int home = (int) hash & mask;
+        while (true) {
+            long now = nowMicros();
+            int slot = find(key, home);
+            if (slot < 0) {
+                slot = claim(key, home, now);
+                if (slot == TABLE_FULL) {
+                    tableFull.increment();
+                    return false;
+                }
+                if (slot < 0) {
+                    continue;
+                }
+            }
+            Boolean result = acquire(slot, key, fingerprint, now);
+            if (result != null) {
+                (result ? permitted : rejected).increment();
+                return result;
+            }
+        }
+    }
+
+    private int find(long key, int home) {
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (home + i) & mask;
+            if (table.get(slot * 2) == key) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    // Um bucket cheio (tat <= agora) e igual a um bucket novo, entao pode ser reaproveitado sem mudar nenhuma decisao.
+    // Um bucket ainda em uso nunca sai: despeja-lo devolveria a rajada inteira ao dono quando ele voltasse, e quem gera
+    // chaves que colidem poderia zerar o proprio bucket. Sem slot vazio ou ocioso na janela de busca a chamada e
+    // rejeitada (TABLE_FULL) ate algum bucket dali encher de novo, o que leva no maximo um periodo.
+    private int claim(long key, int home, long now) {
+        for (int i = 0; i < PROBES; i++) {
+            int slot = (home + i) & mask;
+            long current = table.get(slot * 2);
+            long tat = table.get(slot * 2 + 1) >>> FINGERPRINT_BITS;
+            if (current == EMPTY || tat <= now) {
+                return table.compareAndSet(slot * 2, current, key) ? slot : -1;
+            }
+        }
+        return TABLE_FULL;
+    }
+
+    // O fingerprint da chave no estado impede que um CAS atrasado, feito por quem leu o slot antes de ele trocar de
+    // dono, consuma o bucket da chave nova; um estado com fingerprint de outra chave vale como bucket cheio
+    private Boolean acquire(int slot, long key, long fingerprint, long now) {
+        int index = slot * 2 + 1;
+        long state = table.get(index);
+        if (table.get(slot * 2) != key) {
+            return null;
+        }
+        long tat = (state & FINGERPRINT_MASK) == fingerprint ? Math.max(state >>> FINGERPRINT_BITS, now) : now;
+        long next = tat + emissionIntervalMicros;
+        if (next - now > periodMicros) {
+            return Boolean.FALSE;
+        }
+        return table.compareAndSet(index, state, next << FINGERPRINT_BITS | fingerprint) ? Boolean.TRUE : null;
+    }
+
+    // 48 bits de microssegundos (cerca de 8 anos) a partir da criacao; o +1 evita que um estado zerado pareca ocupado
+    private long nowMicros() {
+        return (System.nanoTime() - startNanos) / 1000 + 1;
+    }
+
+    private static long mix(long key) {
+        key ^= key >>> 33;
+        key *= 0xff51afd7ed558ccdL;
+        key ^= key >>> 33;
+        key *= 0xc4ceb9fe1a85ec53L;
+        return key ^ (key >>> 33);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("ratelimiter.keyed.calls", permitted, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "permitted")
+            .register(registry);
+        FunctionCounter.builder("ratelimiter.keyed.calls", rejected, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "rejected")
+            .register(registry);
+        FunctionCounter.builder("ratelimiter.keyed.calls", tableFull, LongAdder::sum)
+            .description("Calls rejected because every bucket in the key's probe window was still in use")
+            .tag("name", name)
+            .tag("kind", "table_full")
+            .register(registry);
+    }
+}
+
+//Neste exemplo, o KeyedRateLimiter substitui o bucket global do RateLimiterConfig (10 chamadas por segundo para todos)
+// por um bucket por chave, entao um cliente barulhento so esgota o proprio limite. O bucket segue o GCRA, equivalente
+// ao token bucket: guarda o instante teorico da proxima chamada (tat); a chamada passa se tat + intervalo - agora nao
+// ultrapassa o periodo, o que permite ate limitForPeriod chamadas em rajada. A tabela tem tamanho fixo (16 bytes por
+// chave), a busca olha no maximo 16 slots e rejeicoes nao escrevem nada, entao acquire e O(1) e sem lock mesmo com
+// milhoes de chaves. Quando a tabela satura a chave nova e rejeitada (calls{kind=table_full}) em vez de tomar o bucket
+// de outra. KeyedRateLimiterBenchmark mede o acquire com uma chave quente e com milhoes de chaves. Os controllers usam
+// como chave a identidade autenticada do chamador (ou o endereco de origem). Duas threads inserindo a mesma chave ao
+// mesmo tempo podem, raramente, criar dois buckets para ela ate que um deles fique ocioso e seja reaproveitado.
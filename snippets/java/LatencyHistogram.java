@@ -0,0 +1,166 @@
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Histograma log-linear (como o HdrHistogram): cada potencia de 2 e dividida em 32 faixas lineares, entao qualquer
+// percentil tem erro relativo de no maximo ~3%. Os contadores ficam em uma janela circular de intervalos, e o percentil
+// considera so os intervalos da janela. record() nao aloca e nao usa lock: calcula o indice e incrementa um LongAdder.
+public class LatencyHistogram implements MeterBinder {
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // ~18 minutos em nanos; valores maiores caem na ultima faixa
+    private static final long MAX_VALUE = (1L << 40) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final String name;
+    private final Duration window;
+    private final long intervalNanos;
+    private final Interval[] intervals;
+    private final long startNanos = System.nanoTime();
+
+    // window e dividida em intervals intervalos; a cada intervalo o mais antigo e zerado e reaproveitado
+    public LatencyHistogram(String name, Duration window, int intervals) {
+        this.name = name;
+        this.window = window;
+        this.intervalNanos = window.toNanos() / intervals;
+        this.intervals = new Interval[intervals];
+        for (int i = 0; i < intervals; i++) {
+            this.intervals[i] = new Interval();
+        }
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public void record(long latencyNanos) {
+        record(latencyNanos, System.nanoTime());
+    }
+
+    // Para quem ja leu o relogio ao medir a latencia (nowNanos = System.nanoTime() do fim da chamada)
+    public void record(long latencyNanos, long nowNanos) {
+        long epoch = (nowNanos - startNanos) / intervalNanos;
+        Interval interval = intervals[(int) (epoch % intervals.length)];
+        long current = interval.epoch.get();
+        // o primeiro a chegar em um intervalo novo zera os contadores antigos; gravacoes concorrentes com a limpeza
+        // podem se perder, o que so acontece uma vez por intervalo
+        if (current < epoch && interval.epoch.compareAndSet(current, epoch)) {
+            for (LongAdder count : interval.counts) {
+                count.reset();
+            }
+        }
+        interval.counts[index(Math.max(0, Math.min(latencyNanos, MAX_VALUE)))].increment();
+    }
+
+    public void record(Duration latency) {
+        record(latency.toNanos());
+    }
+
+    // Quantidade de gravacoes na janela
+    public long count() {
+        long epoch = currentEpoch();
+        long count = 0;
+        for (Interval interval : intervals) {
+            if (inWindow(interval, epoch)) {
+                for (LongAdder bucket : interval.counts) {
+                    count += bucket.sum();
+                }
+            }
+        }
+        return count;
+    }
+
+    // Limite superior da faixa que contem o percentil (0.99 = p99), ou 0 sem gravacoes na janela
+    public long percentileNanos(double percentile) {
+        long epoch = currentEpoch();
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (Interval interval : intervals) {
+            if (inWindow(interval, epoch)) {
+                for (int i = 0; i < BUCKETS; i++) {
+                    long count = interval.counts[i].sum();
+                    counts[i] += count;
+                    total += count;
+                }
+            }
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile * total));
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return highestEquivalentValue(i);
+            }
+        }
+        return MAX_VALUE;
+    }
+
+    public Duration percentile(double percentile) {
+        return Duration.ofNanos(percentileNanos(percentile));
+    }
+
+    // Descarta a janela atual, por exemplo depois de abrir o circuito, para que o gatilho so olhe latencias novas
+    public void reset() {
+        for (Interval interval : intervals) {
+            interval.epoch.set(-1);
+        }
+    }
+
+    private long currentEpoch() {
+        return (System.nanoTime() - startNanos) / intervalNanos;
+    }
+
+    private boolean inWindow(Interval interval, long epoch) {
+        long intervalEpoch = interval.epoch.get();
+        return intervalEpoch >= 0 && epoch - intervalEpoch < intervals.length;
+    }
+
+    // Faixa 0 cobre [0, 64) com passo 1; a faixa b > 0 cobre [32 << b, 64 << b) com passo 1 << b
+    static int index(long value) {
+        int bucket = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        return bucket * SUB_BUCKETS + (int) (value >>> bucket);
+    }
+
+    static long highestEquivalentValue(int index) {
+        int bucket = index < 2 * SUB_BUCKETS ? 0 : (index >> SUB_BUCKET_BITS) - 1;
+        long subBucket = index - (long) bucket * SUB_BUCKETS;
+        return ((subBucket + 1) << bucket) - 1;
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        for (double percentile : new double[] {0.5, 0.99, 0.999}) {
+            Gauge.builder("latency.histogram.percentile", this, histogram -> histogram.percentileNanos(percentile) / 1e9)
+                .tag("name", name)
+                .tag("quantile", String.valueOf(percentile))
+                .baseUnit("seconds")
+                .register(registry);
+        }
+    }
+
+    private static final class Interval {
+        private final AtomicLong epoch = new AtomicLong(-1);
+        // LongAdder: com varias threads gravando a mesma faixa (a mais comum) o incremento nao disputa uma unica linha de cache
+        private final LongAdder[] counts = new LongAdder[BUCKETS];
+
+        private Interval() {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] = new LongAdder();
+            }
+        }
+    }
+}
+
+//Neste exemplo, o LatencyTrigger.of(Duration.ofMillis(500)) so contava sucessos e erros, e o limite de 500 ms nunca era
+// comparado com a latencia real. O LatencyHistogram guarda a distribuicao das latencias da ultima janela (nos servicos,
+// 6 intervalos de 10 s) em 1152 contadores por intervalo, com erro de ate ~3% em qualquer percentil. Gravar custa um
+// numberOfLeadingZeros, um shift e o incremento de um LongAdder, sem alocar. As politicas latencyOpensBreaker e
+// latencyShrinksBulkhead do ResiliencePolicyEngine leem o p99/p999 a cada tick e abrem o circuito ou reduzem o bulkhead
+// quando o percentil passa do limite.
@@ -0,0 +1,311 @@
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Controle de admissao na frente dos controllers, no estilo do CoDel: o que decide o descarte e o tempo que as
+// requisicoes esperam por uma vaga, e nao o tamanho da fila. Se durante um intervalo inteiro nem a espera mais curta
+// ficou abaixo do target, a fila e persistente (e nao um pico) e a prioridade mais baixa ainda admitida passa a ser
+// rejeitada na entrada, com um 503 sem tocar no servico. A cada intervalo abaixo do target uma prioridade volta.
+public class LoadSheddingFilter extends OncePerRequestFilter {
+
+    public enum Priority {
+        // Leituras servidas pelo cache: baratas, nunca rejeitadas na entrada e so esperam por uma vaga quando ja ha
+        // maxCriticalOverLimit delas acima do limite (um cache miss chama o servico remoto)
+        CRITICAL,
+        DEFAULT,
+        // Caminhos caros (o retry multiplica as chamadas ao servico remoto) e clientes batch: os primeiros a sair
+        SHEDDABLE
+    }
+
+    private enum Outcome {
+        ADMITTED, SHED, QUEUE_TIMEOUT
+    }
+
+    // O cliente so consegue baixar a propria prioridade, nunca subir
+    static final String CALLER_CLASS_HEADER = "X-Caller-Class";
+
+    private static final Priority[] PRIORITIES = Priority.values();
+
+    private final int maxConcurrentRequests;
+    private final Semaphore permits;
+    // CRITICAL admitidas sem vaga porque todas estavam ocupadas, no maximo maxCriticalOverLimit
+    private final AtomicInteger overLimit = new AtomicInteger();
+    private final int maxCriticalOverLimit;
+    private final long targetNanos;
+    private final long intervalNanos;
+    private final long maxQueueWaitNanos;
+    private final long latencySloNanos;
+
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong minQueueDelay = new AtomicLong(Long.MAX_VALUE);
+    // Prioridades com ordinal >= shedFrom sao rejeitadas na entrada; PRIORITIES.length = nenhuma
+    private volatile int shedFrom = PRIORITIES.length;
+
+    private final Counter[][] requests = new Counter[PRIORITIES.length][Outcome.values().length];
+    private final Counter[] goodput = new Counter[PRIORITIES.length];
+    private final Timer queueDelay;
+
+    public LoadSheddingFilter(String name, int maxConcurrentRequests, int maxCriticalOverLimit, Duration target,
+                              Duration interval, Duration maxQueueWait, Duration latencySlo, MeterRegistry registry) {
+        if (maxQueueWait.compareTo(target) <= 0) {
+            throw new IllegalArgumentException("maxQueueWait must be longer than the target queue delay");
+        }
+        this.maxConcurrentRequests = maxConcurrentRequests;
+        this.permits = new Semaphore(maxConcurrentRequests);
+        this.maxCriticalOverLimit = maxCriticalOverLimit;
+        this.targetNanos = target.toNanos();
+        this.intervalNanos = interval.toNanos();
+        // nenhuma requisicao espera mais que um intervalo: a essa altura o CoDel ja teria comecado a descartar
+        this.maxQueueWaitNanos = Math.min(maxQueueWait.toNanos(), intervalNanos);
+        this.latencySloNanos = latencySlo.toNanos();
+
+        for (Priority priority : PRIORITIES) {
+            String tag = priority.name().toLowerCase(Locale.ROOT);
+            for (Outcome outcome : Outcome.values()) {
+                requests[priority.ordinal()][outcome.ordinal()] = Counter.builder("loadshedding.requests")
+                    .tag("name", name)
+                    .tag("priority", tag)
+                    .tag("outcome", outcome.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+            }
+            goodput[priority.ordinal()] = Counter.builder("loadshedding.goodput")
+                .description("Admitted requests answered without a server error within the latency SLO")
+                .tag("name", name)
+                .tag("priority", tag)
+                .register(registry);
+        }
+        this.queueDelay = Timer.builder("loadshedding.queue.delay")
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("loadshedding.shed.priorities", this, filter -> PRIORITIES.length - filter.shedFrom)
+            .description("Number of priorities currently rejected on arrival")
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("loadshedding.inflight", this, LoadSheddingFilter::getInFlight)
+            .tag("name", name)
+            .register(registry);
+    }
+
+    static Priority classify(HttpServletRequest request) {
+        if ("batch".equalsIgnoreCase(request.getHeader(CALLER_CLASS_HEADER))) {
+            return Priority.SHEDDABLE;
+        }
+        String path = request.getRequestURI();
+        if (path.endsWith("/cache")) {
+            return Priority.CRITICAL;
+        }
+        if (path.endsWith("/retry")) {
+            return Priority.SHEDDABLE;
+        }
+        return Priority.DEFAULT;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        Priority priority = classify(request);
+        long arrival = System.nanoTime();
+        if (priority.ordinal() >= shedFrom) {
+            maybeEndInterval(arrival);
+            reject(response, priority, Outcome.SHED);
+            return;
+        }
+
+        if (priority == Priority.CRITICAL && admitCritical(request, response, filterChain, arrival)) {
+            return;
+        }
+
+        boolean acquired;
+        try {
+            // a espera e curta porque segura uma thread do container; passar do target ja conta como fila persistente
+            acquired = permits.tryAcquire(maxQueueWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        long admitted = System.nanoTime();
+        onQueueDelay(admitted - arrival, admitted);
+        if (!acquired) {
+            reject(response, priority, Outcome.QUEUE_TIMEOUT);
+            return;
+        }
+
+        proceed(request, response, filterChain, priority, arrival, true);
+    }
+
+    // Ocupa uma vaga livre se houver; se nao houver, entra acima do limite enquanto houver folga. Nao alimenta o atraso
+    // de fila: um atraso zero que nao passou pela fila puxaria o minimo do intervalo para baixo e desligaria o descarte
+    // das outras prioridades. Sem folga devolve false e a requisicao espera na fila como as demais.
+    private boolean admitCritical(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                                  long arrival) throws ServletException, IOException {
+        maybeEndInterval(arrival);
+        boolean holdsPermit = permits.tryAcquire();
+        if (!holdsPermit && overLimit.incrementAndGet() > maxCriticalOverLimit) {
+            overLimit.decrementAndGet();
+            return false;
+        }
+        proceed(request, response, filterChain, Priority.CRITICAL, arrival, holdsPermit);
+        return true;
+    }
+
+    private void proceed(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain,
+                         Priority priority, long arrival, boolean holdsPermit) throws ServletException, IOException {
+        requests[priority.ordinal()][Outcome.ADMITTED.ordinal()].increment();
+        boolean failed = true;
+        try {
+            filterChain.doFilter(request, response);
+            failed = false;
+        } finally {
+            if (!failed && request.isAsyncStarted()) {
+                // endpoints que devolvem CompletableFuture liberam a vaga so quando a resposta for escrita
+                request.getAsyncContext().addListener(new CompletionListener(priority, arrival, holdsPermit));
+            } else {
+                complete(priority, arrival, holdsPermit, failed ? HttpServletResponse.SC_INTERNAL_SERVER_ERROR : response.getStatus());
+            }
+        }
+    }
+
+    private void reject(HttpServletResponse response, Priority priority, Outcome outcome) {
+        requests[priority.ordinal()][outcome.ordinal()].increment();
+        response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        response.setHeader("Retry-After", "1");
+    }
+
+    private void complete(Priority priority, long arrival, boolean holdsPermit, int status) {
+        if (holdsPermit) {
+            permits.release();
+        } else {
+            overLimit.decrementAndGet();
+        }
+        if (status < 500 && status != 429 && System.nanoTime() - arrival <= latencySloNanos) {
+            goodput[priority.ordinal()].increment();
+        }
+    }
+
+    private void onQueueDelay(long delayNanos, long now) {
+        queueDelay.record(delayNanos, TimeUnit.NANOSECONDS);
+        minQueueDelay.accumulateAndGet(delayNanos, Math::min);
+        maybeEndInterval(now);
+    }
+
+    // Uma unica thread fecha cada intervalo (CAS em intervalStart) e ajusta quantas prioridades sao rejeitadas
+    private void maybeEndInterval(long now) {
+        long start = intervalStart.get();
+        if (now - start < intervalNanos || !intervalStart.compareAndSet(start, now)) {
+            return;
+        }
+        long minDelay = minQueueDelay.getAndSet(Long.MAX_VALUE);
+        // sem medicoes no intervalo (tudo rejeitado na entrada) conta como fila vazia, para a admissao voltar a abrir
+        if (minDelay != Long.MAX_VALUE && minDelay > targetNanos) {
+            shedFrom = Math.max(Priority.CRITICAL.ordinal() + 1, shedFrom - 1);
+        } else if (shedFrom < PRIORITIES.length) {
+            shedFrom = shedFrom + 1;
+        }
+    }
+
+    public int getInFlight() {
+        return maxConcurrentRequests - permits.availablePermits() + overLimit.get();
+    }
+
+    private final class CompletionListener implements AsyncListener {
+        private final Priority priority;
+        private final long arrival;
+        private final boolean holdsPermit;
+        // onTimeout e onError sao seguidos de onComplete; a vaga e liberada uma unica vez
+        private final AtomicBoolean done = new AtomicBoolean();
+
+        private CompletionListener(Priority priority, long arrival, boolean holdsPermit) {
+            this.priority = priority;
+            this.arrival = arrival;
+            this.holdsPermit = holdsPermit;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            HttpServletResponse response = (HttpServletResponse) event.getSuppliedResponse();
+            finish(response.getStatus());
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish(HttpServletResponse.SC_INTERNAL_SERVER_ERROR);
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+        }
+
+        private void finish(int status) {
+            if (done.compareAndSet(false, true)) {
+                complete(priority, arrival, holdsPermit, status);
+            }
+        }
+    }
+}
+
+@Configuration
+class LoadSheddingConfiguration {
+
+    // O SLO de latencia acompanha o timeout de 1000 ms do time limiter: depois disso a resposta ja e um fallback.
+    // Sem max-concurrent-requests o limite e metade do pool do Tomcat: com o limite igual ao pool as threads acabam
+    // antes das vagas, as requisicoes esperam na fila do conector, onde o filtro nao mede nada, e o descarte nunca
+    // comeca. A outra metade do pool fica para as que esperam por uma vaga e para as CRITICAL acima do limite.
+    @Bean
+    public FilterRegistrationBean<LoadSheddingFilter> loadSheddingFilter(MeterRegistry meterRegistry,
+                                                                        @Value("${server.tomcat.threads.max:200}") int containerThreads,
+                                                                        @Value("${loadshedding.max-concurrent-requests:0}") int maxConcurrentRequests,
+                                                                        @Value("${loadshedding.max-critical-over-limit:0}") int maxCriticalOverLimit,
+                                                                        @Value("${loadshedding.target-queue-delay:5ms}") Duration target,
+                                                                        @Value("${loadshedding.interval:100ms}") Duration interval,
+                                                                        @Value("${loadshedding.max-queue-wait:20ms}") Duration maxQueueWait,
+                                                                        @Value("${loadshedding.latency-slo:1s}") Duration latencySlo) {
+        int limit = maxConcurrentRequests > 0 ? maxConcurrentRequests : Math.max(1, containerThreads / 2);
+        int criticalOverLimit = maxCriticalOverLimit > 0 ? maxCriticalOverLimit : Math.max(1, limit / 4);
+        FilterRegistrationBean<LoadSheddingFilter> registration = new FilterRegistrationBean<>(
+            new LoadSheddingFilter("userApi", limit, criticalOverLimit, target, interval, maxQueueWait, latencySlo,
+                meterRegistry));
+        registration.addUrlPatterns("/api/users/*");
+        registration.setAsyncSupported(true);
+        // antes de qualquer outro filtro: rejeitar precisa ser a coisa mais barata que a aplicacao faz
+        registration.setOrder(Ordered.HIGHEST_PRECEDENCE);
+        return registration;
+    }
+}
+
+//Neste exemplo, com o UserController/UserControllerAsync saturados todas as rotas entravam na mesma fila e so saiam
+// quando o timeout disparava. O LoadSheddingFilter limita as requisicoes em andamento e mede quanto cada uma esperou
+// por uma vaga; se a menor espera de um intervalo de 100 ms passa de 5 ms, as rotas /retry e os clientes com
+// X-Caller-Class: batch passam a receber 503 com Retry-After na entrada, e se a fila continuar as rotas comuns tambem.
+// As leituras de /cache nunca sao rejeitadas na entrada: usam uma vaga livre ou entram acima do limite, ate um quarto
+// dele; passando disso esperam na fila como as outras, porque um cache miss chama o servico remoto. O limite padrao e
+// metade de server.tomcat.threads.max e ninguem espera mais que 20 ms por uma vaga, entao o filtro nao toma o pool do
+// Tomcat. loadshedding.requests{priority,outcome} mostra admitidas e rejeitadas, e loadshedding.goodput conta as
+// admitidas respondidas sem erro 5xx/429 dentro do SLO de 1 s; sob sobrecarga a razao goodput/admitidas mostra se o
+// descarte esta protegendo as requisicoes que ficaram.
@@ -0,0 +1,167 @@
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.ConnectionFactory;
+import com.rabbitmq.client.ShutdownSignalException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.TimeoutException;
+
+// Um unico canal com publisher confirms e direct reply-to (amq.rabbitmq.reply-to): as publicacoes nao esperam pela
+// confirmacao, que chega depois pelo ConfirmListener, entao varias requisicoes ficam em andamento ao mesmo tempo.
+// A conexao e propria e o CachingConnectionFactory desliga a recuperacao automatica do amqp-client, entao a
+// reconexao e feita aqui: quando a conexao cai, a proxima publicacao abre outra (no maximo uma tentativa por
+// reconnectDelay) e, enquanto o broker nao volta, os lotes falham na hora.
+public class RabbitFallbackTransport implements FallbackTransport {
+    private static final String DIRECT_REPLY_TO = "amq.rabbitmq.reply-to";
+
+    private final ConnectionFactory connectionFactory;
+    private final String connectionName;
+    private final long reconnectDelayNanos;
+    private Listener listener;
+    private volatile Connection connection;
+    private volatile Channel channel;
+    // delivery tag -> correlation id das publicacoes ainda nao confirmadas; um mapa por canal, porque as delivery
+    // tags recomecam a cada canal
+    private volatile ConcurrentNavigableMap<Long, Long> unconfirmed = new ConcurrentSkipListMap<>();
+    private long nextReconnect;
+    private volatile boolean closed;
+
+    public RabbitFallbackTransport(ConnectionFactory connectionFactory, String connectionName, Duration reconnectDelay) {
+        this.connectionFactory = connectionFactory;
+        this.connectionName = connectionName;
+        this.reconnectDelayNanos = reconnectDelay.toNanos();
+    }
+
+    @Override
+    public void start(Listener listener) throws IOException {
+        this.listener = listener;
+        open();
+    }
+
+    private void open() throws IOException {
+        try {
+            connection = connectionFactory.newConnection(connectionName);
+        } catch (TimeoutException e) {
+            throw new IOException(e);
+        }
+        Channel opened = connection.createChannel();
+        ConcurrentNavigableMap<Long, Long> tags = new ConcurrentSkipListMap<>();
+        opened.confirmSelect();
+        opened.addConfirmListener(
+            (deliveryTag, multiple) -> confirm(tags, deliveryTag, multiple, true),
+            (deliveryTag, multiple) -> confirm(tags, deliveryTag, multiple, false));
+        // mandatory: uma fila inexistente devolve a mensagem (basic.return, antes do ack) em vez de deixar a requisicao
+        // esperando o timeout da resposta
+        opened.addReturnListener(returned -> listener.onFailure(
+            Long.parseLong(returned.getProperties().getCorrelationId()),
+            new IOException("Fallback request to " + returned.getRoutingKey() + " was returned: " + returned.getReplyText())));
+        // as publicacoes que o canal nao chegou a confirmar falham na hora; as que ja foram confirmadas perderam o
+        // consumidor do direct reply-to junto com o canal e terminam pelo timeout da resposta
+        opened.addShutdownListener(cause -> failUnconfirmed(tags, cause));
+        // o consumidor do direct reply-to precisa existir, no mesmo canal, antes da primeira publicacao
+        opened.basicConsume(DIRECT_REPLY_TO, true,
+            (consumerTag, delivery) -> listener.onReply(Long.parseLong(delivery.getProperties().getCorrelationId()),
+                new String(delivery.getBody(), StandardCharsets.UTF_8)),
+            consumerTag -> { });
+        unconfirmed = tags;
+        channel = opened;
+    }
+
+    // Chamado so pela thread do publisher, que e a unica a abrir conexoes
+    private void ensureOpen() throws IOException {
+        Channel current = channel;
+        if (current != null && current.isOpen()) {
+            return;
+        }
+        if (closed) {
+            throw new IOException("Fallback transport is closed");
+        }
+        long now = System.nanoTime();
+        if (now - nextReconnect < 0) {
+            throw new IOException("Broker connection is down, next reconnect in "
+                + Duration.ofNanos(nextReconnect - now).toMillis() + " ms");
+        }
+        nextReconnect = now + reconnectDelayNanos;
+        closeQuietly();
+        open();
+    }
+
+    // As requisicoes ja publicadas continuam esperando confirmacao e resposta; so as que nao sairam falham
+    @Override
+    public void publish(List<Request> batch) throws IOException {
+        ensureOpen();
+        Channel current = channel;
+        ConcurrentNavigableMap<Long, Long> tags = unconfirmed;
+        for (int i = 0; i < batch.size(); i++) {
+            Request request = batch.get(i);
+            AMQP.BasicProperties properties = new AMQP.BasicProperties.Builder()
+                .correlationId(Long.toString(request.getCorrelationId()))
+                .replyTo(DIRECT_REPLY_TO)
+                .headers(request.getHeaders())
+                .expiration(request.getExpiration())
+                .build();
+            long deliveryTag = current.getNextPublishSeqNo();
+            tags.put(deliveryTag, request.getCorrelationId());
+            try {
+                current.basicPublish("", request.getQueue(), true, properties, request.getPayload().getBytes(StandardCharsets.UTF_8));
+            } catch (IOException e) {
+                tags.remove(deliveryTag);
+                throw new PartialPublishException(i, e);
+            } catch (ShutdownSignalException e) {
+                // AlreadyClosedException: o canal caiu no meio do lote
+                tags.remove(deliveryTag);
+                throw new PartialPublishException(i, new IOException(e));
+            }
+        }
+    }
+
+    private void confirm(ConcurrentNavigableMap<Long, Long> tags, long deliveryTag, boolean multiple, boolean ack) {
+        if (multiple) {
+            ConcurrentNavigableMap<Long, Long> confirmed = tags.headMap(deliveryTag, true);
+            for (Map.Entry<Long, Long> entry : confirmed.entrySet()) {
+                listener.onConfirm(entry.getValue(), ack);
+            }
+            confirmed.clear();
+        } else {
+            Long correlationId = tags.remove(deliveryTag);
+            if (correlationId != null) {
+                listener.onConfirm(correlationId, ack);
+            }
+        }
+    }
+
+    private void failUnconfirmed(ConcurrentNavigableMap<Long, Long> tags, ShutdownSignalException cause) {
+        IOException error = new IOException("Broker channel closed before confirming the fallback request", cause);
+        for (Long correlationId : tags.values()) {
+            listener.onFailure(correlationId, error);
+        }
+        tags.clear();
+    }
+
+    private void closeQuietly() {
+        Connection current = connection;
+        if (current != null && current.isOpen()) {
+            try {
+                current.close();
+            } catch (IOException | ShutdownSignalException e) {
+                // a conexao ja esta sendo descartada
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        Connection current = connection;
+        if (current != null && current.isOpen()) {
+            current.close();
+        }
+    }
+}
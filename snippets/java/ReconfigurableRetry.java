@@ -0,0 +1,220 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+// Retry com a mesma semantica do Retry do Resilience4j, mas com a configuracao trocavel em tempo de execucao
+public class ReconfigurableRetry implements MeterBinder {
+    private final String name;
+    private volatile Config config;
+
+    private final LongAdder successWithoutRetry = new LongAdder();
+    private final LongAdder successWithRetry = new LongAdder();
+    private final LongAdder failedWithoutRetry = new LongAdder();
+    private final LongAdder failedWithRetry = new LongAdder();
+
+    public ReconfigurableRetry(String name, Config config) {
+        this.name = name;
+        this.config = config;
+    }
+
+    public static ReconfigurableRetry of(String name, Config config) {
+        return new ReconfigurableRetry(name, config);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    // A nova configuracao vale a partir da proxima tentativa, inclusive para chamadas que ja estao em andamento
+    public void changeConfig(Config newConfig) {
+        config = newConfig;
+    }
+
+    public <T> T executeSupplier(Supplier<T> supplier) {
+        long previousDelay = 0;
+        for (int attempt = 1; ; attempt++) {
+            try {
+                T result = supplier.get();
+                // o deposito no budget vem dos circuit breakers (RetryBudget.depositOnSuccess), nao daqui
+                (attempt == 1 ? successWithoutRetry : successWithRetry).increment();
+                return result;
+            } catch (RuntimeException e) {
+                Config current = config;
+                // o budget e consultado por ultimo para que so retries que de fato acontecem consumam saldo
+                if (!current.retryOn.test(e) || attempt >= current.maxAttempts
+                    || (current.retryBudget != null && !current.retryBudget.tryAcquireRetry())) {
+                    (attempt == 1 ? failedWithoutRetry : failedWithRetry).increment();
+                    throw e;
+                }
+                previousDelay = current.delayMillis(attempt, previousDelay);
+                if (!sleep(previousDelay)) {
+                    failedWithRetry.increment();
+                    throw e;
+                }
+            }
+        }
+    }
+
+    private static boolean sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    public long getNumberOfSuccessfulCallsWithoutRetryAttempt() {
+        return successWithoutRetry.sum();
+    }
+
+    public long getNumberOfSuccessfulCallsWithRetryAttempt() {
+        return successWithRetry.sum();
+    }
+
+    public long getNumberOfFailedCallsWithoutRetryAttempt() {
+        return failedWithoutRetry.sum();
+    }
+
+    public long getNumberOfFailedCallsWithRetryAttempt() {
+        return failedWithRetry.sum();
+    }
+
+    // Mesmos nomes e tags do TaggedRetryMetrics do Resilience4j
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        bind(registry, "successful_without_retry", successWithoutRetry);
+        bind(registry, "successful_with_retry", successWithRetry);
+        bind(registry, "failed_without_retry", failedWithoutRetry);
+        bind(registry, "failed_with_retry", failedWithRetry);
+    }
+
+    private void bind(MeterRegistry registry, String kind, LongAdder counter) {
+        FunctionCounter.builder("resilience4j.retry.calls", counter, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    public static final class Config {
+        private final int maxAttempts;
+        private final Duration waitDuration;
+        private final double backoffMultiplier;
+        private final Backoff backoff;
+        private final RetryBudget retryBudget;
+        private final Predicate<Throwable> retryOn;
+
+        private Config(Builder builder) {
+            this.maxAttempts = builder.maxAttempts;
+            this.waitDuration = builder.waitDuration;
+            this.backoffMultiplier = builder.backoffMultiplier;
+            this.backoff = builder.backoff;
+            this.retryBudget = builder.retryBudget;
+            this.retryOn = builder.retryOn;
+        }
+
+        public static Builder custom() {
+            return new Builder();
+        }
+
+        public static Config ofDefaults() {
+            return custom().build();
+        }
+
+        public static Builder from(Config config) {
+            Builder builder = new Builder()
+                .maxAttempts(config.maxAttempts)
+                .waitDuration(config.waitDuration)
+                .exponentialBackoff(config.backoffMultiplier)
+                .backoff(config.backoff)
+                .retryBudget(config.retryBudget);
+            builder.retryOn = config.retryOn;
+            return builder;
+        }
+
+        public int getMaxAttempts() {
+            return maxAttempts;
+        }
+
+        public Duration getWaitDuration() {
+            return waitDuration;
+        }
+
+        public RetryBudget getRetryBudget() {
+            return retryBudget;
+        }
+
+        long delayMillis(int attempt, long previousMillis) {
+            if (backoff != null) {
+                return backoff.delayMillis(attempt, previousMillis);
+            }
+            return (long) (waitDuration.toMillis() * Math.pow(backoffMultiplier, attempt - 1));
+        }
+
+        // Valores padrao iguais aos do RetryConfig do Resilience4j
+        public static final class Builder {
+            private int maxAttempts = 3;
+            private Duration waitDuration = Duration.ofMillis(500);
+            private double backoffMultiplier = 1;
+            private Backoff backoff;
+            private RetryBudget retryBudget;
+            private Predicate<Throwable> retryOn = e -> true;
+
+            public Builder maxAttempts(int maxAttempts) {
+                this.maxAttempts = maxAttempts;
+                return this;
+            }
+
+            public Builder waitDuration(Duration waitDuration) {
+                this.waitDuration = waitDuration;
+                return this;
+            }
+
+            public Builder exponentialBackoff(double multiplier) {
+                this.backoffMultiplier = multiplier;
+                return this;
+            }
+
+            // Substitui waitDuration/exponentialBackoff, por exemplo por Backoff.decorrelatedJitter
+            public Builder backoff(Backoff backoff) {
+                this.backoff = backoff;
+                return this;
+            }
+
+            public Builder retryBudget(RetryBudget retryBudget) {
+                this.retryBudget = retryBudget;
+                return this;
+            }
+
+            @SafeVarargs
+            public final Builder retryExceptions(Class<? extends Throwable>... exceptions) {
+                this.retryOn = e -> {
+                    for (Class<? extends Throwable> type : exceptions) {
+                        if (type.isInstance(e)) {
+                            return true;
+                        }
+                    }
+                    return false;
+                };
+                return this;
+            }
+
+            public Config build() {
+                if (maxAttempts < 1 || backoffMultiplier < 1) {
+                    throw new IllegalArgumentException("maxAttempts and backoff multiplier must be at least 1");
+                }
+                return new Config(this);
+            }
+        }
+    }
+}
@@ -14,6 +14,18 @@ public class Resilience4jConfig {
         return CircuitBreakerRegistry.of(circuitBreakerConfig);
     }
 
+    // Mesmos limites do circuitBreakerConfig, com janela por tempo e contadores sem lock para alto volume de chamadas
+    @Bean
+    public StripedCircuitBreaker stripedCircuitBreaker() {
+        return StripedCircuitBreaker.of("userService", StripedCircuitBreaker.Config.custom()
+            .failureRateThreshold(50)
+            .slowCallRateThreshold(50)
+            .slowCallDurationThreshold(Duration.ofMillis(500))
+            .slidingWindow(StripedCircuitBreaker.SlidingWindowType.TIME_BASED, 10)
+            .waitDurationInOpenState(Duration.ofSeconds(30))
+            .build());
+    }
+
     @Bean
     public BulkheadConfig bulkheadConfig() {
         return BulkheadConfig.custom()
@@ -26,6 +38,16 @@ public class Resilience4jConfig {
         return BulkheadRegistry.of(bulkheadConfig);
     }
 
+    // Comeca com os mesmos 50 permits do bulkheadConfig e passa a ajustar o limite pelo RTT e erros observados. Um 4xx
+    // e erro do pedido, nao do servico remoto; so o 429 indica sobrecarga. Como e um MeterBinder, o Spring Boot ja o
+    // liga ao MeterRegistry.
+    @Bean
+    public AdaptiveBulkhead adaptiveBulkhead() {
+        return new AdaptiveBulkhead("userService", 50, 5, 500, Duration.ofMillis(500),
+            error -> !(error instanceof HttpClientErrorException)
+                || ((HttpClientErrorException) error).getStatusCode() == HttpStatus.TOO_MANY_REQUESTS);
+    }
+
     @Bean
     public TimeoutConfig timeoutConfig() {
         return TimeoutConfig.custom()
@@ -38,6 +60,39 @@ public class Resilience4jConfig {
         return TimeoutRegistry.of(timeoutConfig);
     }
 
+    // Executa a cadeia bloqueante bulkhead -> circuit breaker em virtual threads (Java 21)
+    @Bean(destroyMethod = "close")
+    public VirtualThreadTimeLimiter virtualThreadTimeLimiter() {
+        return new VirtualThreadTimeLimiter("userService", Duration.ofMillis(1000));
+    }
+
+    // Chamadas bloqueantes disparadas por CompletableFuture.supplyAsync: fora do ForkJoinPool.commonPool, que tem
+    // so (nucleos - 1) threads e e compartilhado com parallel streams e com os demais supplyAsync da aplicacao
+    @Bean(destroyMethod = "close")
+    public ExecutorService blockingCallExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("blocking-call-", 0).factory());
+    }
+
+    // Eventos de circuit breaker e bulkhead entregues aos gatilhos fora da thread da requisicao; as metricas sao
+    // ligadas pelo Spring Boot, como as dos demais MeterBinder
+    @Bean(destroyMethod = "close")
+    public ResilienceEventBus resilienceEventBus() {
+        return new ResilienceEventBus("resilience", 8192, 256).start();
+    }
+
+    // Os servicos ligam suas instancias a este binder em vez de criar um registry proprio em setupResilienceTriggers
+    @Bean
+    public ResilienceMetricsBinder resilienceMetricsBinder(MeterRegistry meterRegistry) {
+        return new ResilienceMetricsBinder(meterRegistry);
+    }
+
+    // Segunda chamada apos o p95 observado (entre 20 e 500 ms, abaixo do timeout de 1000 ms), com no maximo 10% de
+    // chamadas extras; cada servico pede o Hedger do seu ponto de chamada pelo nome
+    @Bean(destroyMethod = "close")
+    public Hedger.Registry hedgerRegistry(MeterRegistry meterRegistry) {
+        return new Hedger.Registry(meterRegistry, 0.95, Duration.ofMillis(20), Duration.ofMillis(500), 0.1, 10);
+    }
+
     @Bean
     public RateLimiterConfig rateLimiterConfig() {
         return RateLimiterConfig.custom()
@@ -50,16 +105,63 @@ public class Resilience4jConfig {
         return RateLimiterRegistry.of(rateLimiterConfig);
     }
 
+    // Mesmo limite do rateLimiterConfig, mas por chamador (o userRateLimiter continua como limite global); 2M chaves
+    // ocupam 32 MB fixos
+    @Bean
+    public KeyedRateLimiter keyedRateLimiter() {
+        return new KeyedRateLimiter("userRateLimiter", 10, Duration.ofSeconds(1), 1 << 21);
+    }
+
+    // Retries de todo o processo limitados a 10% das chamadas com sucesso dos circuit breakers do registry (minimo de 5
+    // por segundo, ate 100 acumulados)
+    @Bean
+    public RetryBudget retryBudget(CircuitBreakerRegistry circuitBreakerRegistry) {
+        return new RetryBudget("userService", 0.1, 5, 100).depositOnSuccess(circuitBreakerRegistry);
+    }
+
+    // Falhas que outra tentativa pode resolver: sobrecarga (429), erro do servidor (5xx) e I/O. Erros 4xx e rejeicoes
+    // do circuit breaker ou do bulkhead falhariam de novo
+    static boolean isRetryable(Throwable e) {
+        return e instanceof TooManyRequestsException
+            || e instanceof HttpServerErrorException
+            || e instanceof ResourceAccessException
+            || e instanceof FeignException.FeignServerException
+            || e instanceof RetryableException;
+    }
+
+    // Configuracao padrao do registry: backoff com jitter, sem budget
     @Bean
     public RetryConfig retryConfig() {
+        Backoff backoff = Backoff.fullJitter(Duration.ofMillis(500), Duration.ofSeconds(5));
         return RetryConfig.custom()
         .maxAttempts(3)
-        .waitDuration(Duration.ofMillis(500))
+        .intervalFunction(attempt -> backoff.delayMillis(attempt, 0))
+        .retryOnException(Resilience4jConfig::isRetryable)
         .build();
     }
 
+    // So o userRetry (rotas /retry e UserApi) divide o budget com o reconfigurableRetry; outros retries criados a partir
+    // da configuracao padrao nao gastam saldo
+    @Bean
+    public RetryRegistry retryRegistry(RetryConfig retryConfig, RetryBudget retryBudget) {
+        Backoff backoff = Backoff.fullJitter(Duration.ofMillis(500), Duration.ofSeconds(5));
+        RetryRegistry retryRegistry = RetryRegistry.of(retryConfig);
+        retryBudget.track(retryRegistry.retry("userRetry", RetryConfig.custom()
+            .maxAttempts(3)
+            .intervalFunction(attempt -> backoff.delayMillis(attempt, 0))
+            .retryOnException(retryBudget.retryOn(Resilience4jConfig::isRetryable))
+            .build()));
+        return retryRegistry;
+    }
+
+    // Configuracao trocavel em tempo de execucao pelo ResiliencePolicyEngine
     @Bean
-    public RetryRegistry retryRegistry(RetryConfig retryConfig) {
-        return RetryRegistry.of(retryConfig);
+    public ReconfigurableRetry reconfigurableRetry(RetryBudget retryBudget) {
+        return ReconfigurableRetry.of("userService", ReconfigurableRetry.Config.custom()
+            .maxAttempts(3)
+            .backoff(Backoff.decorrelatedJitter(Duration.ofMillis(500), Duration.ofSeconds(5)))
+            .retryBudget(retryBudget)
+            .retryExceptions(TooManyRequestsException.class)
+            .build());
     }
 }
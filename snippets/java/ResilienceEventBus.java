@@ -0,0 +1,255 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+// Buffer circular no estilo do Disruptor: a thread da requisicao so copia o evento para um slot pre-alocado, e uma
+// thread dedicada entrega os eventos em lotes aos handlers. Com o buffer cheio o evento e descartado e contado, entao
+// um handler lento nunca atrasa a requisicao.
+public class ResilienceEventBus implements MeterBinder, AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResilienceEventBus.class);
+    private static final long IDLE_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+
+    public enum Type {
+        SUCCESS, ERROR, CALL_NOT_PERMITTED, STATE_TRANSITION, CALL_FINISHED
+    }
+
+    @FunctionalInterface
+    public interface Handler {
+        // O evento e reutilizado depois que o handler retorna: copie o que precisar guardar
+        void onEvent(Event event, boolean endOfBatch);
+    }
+
+    private final String name;
+    private final int mask;
+    private final int maxBatchSize;
+    private final Event[] slots;
+    // published[i] guarda a sequencia escrita no slot i; o consumidor so le o slot quando ela bate com a esperada
+    private final AtomicLongArray published;
+    private final AtomicLong claimed = new AtomicLong();
+    private final AtomicLong consumed = new AtomicLong();
+    private final List<Handler> handlers = new CopyOnWriteArrayList<>();
+    private final Set<Object> attached = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<>()));
+    private final Thread consumer;
+    private volatile boolean running = true;
+
+    private final LongAdder publishedEvents = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder handlerErrors = new LongAdder();
+    // O Spring Boot chama bindTo depois que o bean ja foi iniciado, com o consumidor rodando
+    private volatile DistributionSummary batchSize;
+
+    public ResilienceEventBus(String name, int bufferSize, int maxBatchSize) {
+        if (Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("bufferSize must be a power of two");
+        }
+        this.name = name;
+        this.mask = bufferSize - 1;
+        this.maxBatchSize = maxBatchSize;
+        this.slots = new Event[bufferSize];
+        this.published = new AtomicLongArray(bufferSize);
+        for (int i = 0; i < bufferSize; i++) {
+            slots[i] = new Event();
+            published.set(i, -1);
+        }
+        this.consumer = new Thread(this::consume, name + "-event-bus");
+        this.consumer.setDaemon(true);
+    }
+
+    public ResilienceEventBus subscribe(Handler handler) {
+        handlers.add(handler);
+        return this;
+    }
+
+    public ResilienceEventBus start() {
+        consumer.start();
+        return this;
+    }
+
+    // Um unico consumidor leve por tipo de evento no publisher do Resilience4j, no lugar dos consumidores que rodavam
+    // a logica dos gatilhos na thread da requisicao. Servicos que compartilham a instancia podem chamar attach de novo
+    // sem duplicar os eventos.
+    public ResilienceEventBus attach(CircuitBreaker circuitBreaker) {
+        if (!attached.add(circuitBreaker)) {
+            return this;
+        }
+        String source = circuitBreaker.getName();
+        circuitBreaker.getEventPublisher()
+            .onSuccess(event -> publish(Type.SUCCESS, source, event.getElapsedDuration().toNanos(), null, null, null))
+            .onError(event -> publish(Type.ERROR, source, event.getElapsedDuration().toNanos(), event.getThrowable(), null, null))
+            .onCallNotPermitted(event -> publish(Type.CALL_NOT_PERMITTED, source, 0, null, null, null))
+            .onStateTransition(event -> publish(Type.STATE_TRANSITION, source, 0, null,
+                event.getStateTransition().getFromState(), event.getStateTransition().getToState()));
+        return this;
+    }
+
+    public ResilienceEventBus attach(Bulkhead bulkhead) {
+        if (!attached.add(bulkhead)) {
+            return this;
+        }
+        String source = bulkhead.getName();
+        bulkhead.getEventPublisher()
+            .onCallRejected(event -> publish(Type.CALL_NOT_PERMITTED, source, 0, null, null, null))
+            .onCallFinished(event -> publish(Type.CALL_FINISHED, source, 0, null, null, null));
+        return this;
+    }
+
+    // Sem lock: um CAS para reservar a sequencia, escrita no slot e um store release para publicar
+    public boolean publish(Type type, String source, long durationNanos, Throwable error,
+                           CircuitBreaker.State fromState, CircuitBreaker.State toState) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - consumed.get() > mask) {
+                dropped.increment();
+                return false;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+
+        Event slot = slots[(int) sequence & mask];
+        slot.type = type;
+        slot.source = source;
+        slot.timestampNanos = System.nanoTime();
+        slot.durationNanos = durationNanos;
+        slot.errorType = error == null ? null : error.getClass();
+        slot.fromState = fromState;
+        slot.toState = toState;
+        published.lazySet((int) sequence & mask, sequence);
+        publishedEvents.increment();
+        return true;
+    }
+
+    private void consume() {
+        long next = 0;
+        while (running) {
+            int batch = 0;
+            while (batch < maxBatchSize && published.get((int) (next + batch) & mask) == next + batch) {
+                batch++;
+            }
+            if (batch == 0) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+                continue;
+            }
+            for (int i = 0; i < batch; i++) {
+                dispatch(slots[(int) (next + i) & mask], i == batch - 1);
+            }
+            next += batch;
+            // libera os slots para os produtores so depois que todos os handlers leram o lote
+            consumed.set(next);
+            if (batchSize != null) {
+                batchSize.record(batch);
+            }
+        }
+    }
+
+    private void dispatch(Event event, boolean endOfBatch) {
+        for (Handler handler : handlers) {
+            try {
+                handler.onEvent(event, endOfBatch);
+            } catch (Throwable e) {
+                // um Error que saisse daqui mataria a thread consumidora, e o buffer ficaria cheio para sempre
+                handlerErrors.increment();
+                LOGGER.warn("Handler of event bus {} failed on {} event", name, event.type, e);
+            }
+        }
+    }
+
+    public long getDroppedEvents() {
+        return dropped.sum();
+    }
+
+    public long getBacklog() {
+        return claimed.get() - consumed.get();
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("resilience.events", publishedEvents, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", "published")
+            .register(registry);
+        FunctionCounter.builder("resilience.events", dropped, LongAdder::sum)
+            .description("Events discarded because the ring buffer was full")
+            .tag("name", name)
+            .tag("kind", "dropped")
+            .register(registry);
+        FunctionCounter.builder("resilience.events.handler.errors", handlerErrors, LongAdder::sum)
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("resilience.events.backlog", this, ResilienceEventBus::getBacklog)
+            .description("Events waiting for the consumer thread")
+            .tag("name", name)
+            .register(registry);
+        batchSize = DistributionSummary.builder("resilience.events.batch.size")
+            .tag("name", name)
+            .register(registry);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        consumer.interrupt();
+    }
+
+    public static final class Event {
+        private Type type;
+        private String source;
+        private long timestampNanos;
+        private long durationNanos;
+        private Class<? extends Throwable> errorType;
+        private CircuitBreaker.State fromState;
+        private CircuitBreaker.State toState;
+
+        public Type getType() {
+            return type;
+        }
+
+        public String getSource() {
+            return source;
+        }
+
+        public long getTimestampNanos() {
+            return timestampNanos;
+        }
+
+        public long getDurationNanos() {
+            return durationNanos;
+        }
+
+        public Class<? extends Throwable> getErrorType() {
+            return errorType;
+        }
+
+        public CircuitBreaker.State getFromState() {
+            return fromState;
+        }
+
+        public CircuitBreaker.State getToState() {
+            return toState;
+        }
+    }
+}
+
+//Neste exemplo, os consumidores registrados no getEventPublisher() (onSuccess, onError, onCallNotPermitted e os dois
+// onStateTransition) rodavam a logica dos gatilhos na thread de cada chamada. Com o ResilienceEventBus a thread da
+// chamada so reserva uma sequencia com um CAS e copia o evento para um slot pre-alocado; uma thread dedicada entrega os
+// eventos em lotes de ate maxBatchSize aos handlers, que podem ser lentos sem afetar a latencia. Quando o consumidor nao
+// acompanha e o buffer enche, o evento e descartado em vez de bloquear a requisicao: resilience.events{kind=dropped} e
+// resilience.events.backlog mostram a pressao, e resilience.events.batch.size o tamanho dos lotes entregues.
@@ -0,0 +1,315 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.timelimiter.TimeLimiter;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.ToLongFunction;
+
+// Ponto unico de metricas dos componentes de resiliencia, compartilhado por todos os servicos. Cada instancia e ligada
+// ao MeterRegistry uma unica vez: os Counters e Timers sao resolvidos no bind e os consumidores de eventos so chamam
+// increment/record no meter ja resolvido, sem montar tags nem procurar o meter no registry a cada chamada. Chamar bind
+// de novo com a mesma instancia nao registra nada. As tags sao so name, component e kind (e state), nunca ids ou
+// excecoes. Os meters usam o prefixo resilience., e nao resilience4j., para nao disputar os nomes com os binders do
+// proprio Resilience4j; a tag component separa implementacoes com o mesmo nome (o CircuitBreaker "userService" do
+// Resilience4j e o StripedCircuitBreaker "userService", por exemplo).
+public class ResilienceMetricsBinder {
+
+    private static final String RESILIENCE4J = "resilience4j";
+    private static final String ADAPTIVE = "adaptive";
+    private static final String STRIPED = "striped";
+    private static final String VIRTUAL_THREAD = "virtual_thread";
+    private static final String RECONFIGURABLE = "reconfigurable";
+
+    private final MeterRegistry registry;
+    // Chave e a propria instancia (os componentes nao sobrescrevem equals)
+    private final ConcurrentMap<Object, Binding> bindings = new ConcurrentHashMap<>();
+
+    public ResilienceMetricsBinder(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public ResilienceMetricsBinder bind(CircuitBreaker circuitBreaker) {
+        bindings.computeIfAbsent(circuitBreaker, key -> bindCircuitBreaker(circuitBreaker));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(StripedCircuitBreaker circuitBreaker) {
+        bindings.computeIfAbsent(circuitBreaker, key -> bindStripedCircuitBreaker(circuitBreaker));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(Bulkhead bulkhead) {
+        bindings.computeIfAbsent(bulkhead, key -> bindBulkhead(bulkhead));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(TimeLimiter timeLimiter) {
+        bindings.computeIfAbsent(timeLimiter, key -> bindTimeLimiter(timeLimiter));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(VirtualThreadTimeLimiter timeLimiter) {
+        bindings.computeIfAbsent(timeLimiter, key -> bindVirtualThreadTimeLimiter(timeLimiter));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(Retry retry) {
+        bindings.computeIfAbsent(retry, key -> bindRetry(retry));
+        return this;
+    }
+
+    public ResilienceMetricsBinder bind(ReconfigurableRetry retry) {
+        bindings.computeIfAbsent(retry, key -> bindReconfigurableRetry(retry));
+        return this;
+    }
+
+    // Leitura para scrapes e endpoints de diagnostico: so le LongAdders, contadores ja resolvidos e os getters dos
+    // componentes, sem percorrer o registry
+    public List<ComponentSnapshot> snapshot() {
+        List<ComponentSnapshot> snapshots = new ArrayList<>(bindings.size());
+        for (Binding binding : bindings.values()) {
+            snapshots.add(binding.snapshot());
+        }
+        return snapshots;
+    }
+
+    private Binding bindCircuitBreaker(CircuitBreaker circuitBreaker) {
+        String name = circuitBreaker.getName();
+        Timer successful = Timer.builder("resilience.circuitbreaker.calls")
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .tag("kind", "successful")
+            .register(registry);
+        Timer failed = Timer.builder("resilience.circuitbreaker.calls")
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .tag("kind", "failed")
+            .register(registry);
+        Counter notPermitted = Counter.builder("resilience.circuitbreaker.not.permitted.calls")
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .register(registry);
+        for (CircuitBreaker.State state : CircuitBreaker.State.values()) {
+            Gauge.builder("resilience.circuitbreaker.state", circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+                .tag("name", name)
+                .tag("component", RESILIENCE4J)
+                .tag("state", state.name().toLowerCase())
+                .register(registry);
+        }
+        Gauge.builder("resilience.circuitbreaker.failure.rate", circuitBreaker, breaker -> breaker.getMetrics().getFailureRate())
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .register(registry);
+        Gauge.builder("resilience.circuitbreaker.slow.call.rate", circuitBreaker, breaker -> breaker.getMetrics().getSlowCallRate())
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .register(registry);
+
+        circuitBreaker.getEventPublisher()
+            .onSuccess(event -> successful.record(event.getElapsedDuration()))
+            .onError(event -> failed.record(event.getElapsedDuration()))
+            .onCallNotPermitted(event -> notPermitted.increment());
+
+        return () -> new ComponentSnapshot("circuitbreaker", RESILIENCE4J, name, Map.of(
+            "state", circuitBreaker.getState().getOrder(),
+            "failureRate", circuitBreaker.getMetrics().getFailureRate(),
+            "slowCallRate", circuitBreaker.getMetrics().getSlowCallRate(),
+            "successfulCalls", successful.count(),
+            "failedCalls", failed.count(),
+            "notPermittedCalls", (long) notPermitted.count()));
+    }
+
+    // O StripedCircuitBreaker nao publica eventos: so gauges lidas no scrape, nada no caminho da chamada
+    private Binding bindStripedCircuitBreaker(StripedCircuitBreaker circuitBreaker) {
+        String name = circuitBreaker.getName();
+        for (StripedCircuitBreaker.State state : StripedCircuitBreaker.State.values()) {
+            Gauge.builder("resilience.circuitbreaker.state", circuitBreaker, breaker -> breaker.getState() == state ? 1 : 0)
+                .tag("name", name)
+                .tag("component", STRIPED)
+                .tag("state", state.name().toLowerCase())
+                .register(registry);
+        }
+        Gauge.builder("resilience.circuitbreaker.failure.rate", circuitBreaker, StripedCircuitBreaker::getFailureRate)
+            .tag("name", name)
+            .tag("component", STRIPED)
+            .register(registry);
+        Gauge.builder("resilience.circuitbreaker.slow.call.rate", circuitBreaker, StripedCircuitBreaker::getSlowCallRate)
+            .tag("name", name)
+            .tag("component", STRIPED)
+            .register(registry);
+        Gauge.builder("resilience.circuitbreaker.buffered.calls", circuitBreaker, StripedCircuitBreaker::getNumberOfBufferedCalls)
+            .tag("name", name)
+            .tag("component", STRIPED)
+            .register(registry);
+
+        return () -> new ComponentSnapshot("circuitbreaker", STRIPED, name, Map.of(
+            "state", circuitBreaker.getState().ordinal(),
+            "failureRate", circuitBreaker.getFailureRate(),
+            "slowCallRate", circuitBreaker.getSlowCallRate(),
+            "bufferedCalls", circuitBreaker.getNumberOfBufferedCalls()));
+    }
+
+    private Binding bindBulkhead(Bulkhead bulkhead) {
+        String name = bulkhead.getName();
+        String component = bulkhead instanceof AdaptiveBulkhead ? ADAPTIVE : RESILIENCE4J;
+        Counter rejected = Counter.builder("resilience.bulkhead.calls")
+            .tag("name", name)
+            .tag("component", component)
+            .tag("kind", "rejected")
+            .register(registry);
+        Counter finished = Counter.builder("resilience.bulkhead.calls")
+            .tag("name", name)
+            .tag("component", component)
+            .tag("kind", "finished")
+            .register(registry);
+        Gauge.builder("resilience.bulkhead.available.concurrent.calls", bulkhead, b -> b.getMetrics().getAvailableConcurrentCalls())
+            .tag("name", name)
+            .tag("component", component)
+            .register(registry);
+        Gauge.builder("resilience.bulkhead.max.allowed.concurrent.calls", bulkhead, b -> b.getMetrics().getMaxAllowedConcurrentCalls())
+            .tag("name", name)
+            .tag("component", component)
+            .register(registry);
+
+        bulkhead.getEventPublisher()
+            .onCallRejected(event -> rejected.increment())
+            .onCallFinished(event -> finished.increment());
+
+        return () -> new ComponentSnapshot("bulkhead", component, name, Map.of(
+            "availableConcurrentCalls", bulkhead.getMetrics().getAvailableConcurrentCalls(),
+            "maxAllowedConcurrentCalls", bulkhead.getMetrics().getMaxAllowedConcurrentCalls(),
+            "rejectedCalls", (long) rejected.count(),
+            "finishedCalls", (long) finished.count()));
+    }
+
+    private Binding bindTimeLimiter(TimeLimiter timeLimiter) {
+        String name = timeLimiter.getName();
+        Counter successful = timeLimiterCounter(name, "successful");
+        Counter failed = timeLimiterCounter(name, "failed");
+        Counter timeout = timeLimiterCounter(name, "timeout");
+
+        timeLimiter.getEventPublisher()
+            .onSuccess(event -> successful.increment())
+            .onError(event -> failed.increment())
+            .onTimeout(event -> timeout.increment());
+
+        return () -> new ComponentSnapshot("timelimiter", RESILIENCE4J, name, Map.of(
+            "successfulCalls", (long) successful.count(),
+            "failedCalls", (long) failed.count(),
+            "timeouts", (long) timeout.count()));
+    }
+
+    private Counter timeLimiterCounter(String name, String kind) {
+        return Counter.builder("resilience.timelimiter.calls")
+            .tag("name", name)
+            .tag("component", RESILIENCE4J)
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    // O VirtualThreadTimeLimiter ja conta as chamadas em LongAdders: os FunctionCounters so os leem no scrape
+    private Binding bindVirtualThreadTimeLimiter(VirtualThreadTimeLimiter timeLimiter) {
+        String name = timeLimiter.getName();
+        functionCounter("resilience.timelimiter.calls", VIRTUAL_THREAD, name, "successful", timeLimiter, VirtualThreadTimeLimiter::getNumberOfSuccessfulCalls);
+        functionCounter("resilience.timelimiter.calls", VIRTUAL_THREAD, name, "failed", timeLimiter, VirtualThreadTimeLimiter::getNumberOfFailedCalls);
+        functionCounter("resilience.timelimiter.calls", VIRTUAL_THREAD, name, "timeout", timeLimiter, VirtualThreadTimeLimiter::getNumberOfTimeouts);
+
+        return () -> new ComponentSnapshot("timelimiter", VIRTUAL_THREAD, name, Map.of(
+            "successfulCalls", timeLimiter.getNumberOfSuccessfulCalls(),
+            "failedCalls", timeLimiter.getNumberOfFailedCalls(),
+            "timeouts", timeLimiter.getNumberOfTimeouts()));
+    }
+
+    // Os contadores do Retry.Metrics sao acumulados pelo proprio Resilience4j; nenhum consumidor de eventos e necessario
+    private Binding bindRetry(Retry retry) {
+        String name = retry.getName();
+        Retry.Metrics metrics = retry.getMetrics();
+        functionCounter("resilience.retry.calls", RESILIENCE4J, name, "successful_without_retry", metrics, Retry.Metrics::getNumberOfSuccessfulCallsWithoutRetryAttempt);
+        functionCounter("resilience.retry.calls", RESILIENCE4J, name, "successful_with_retry", metrics, Retry.Metrics::getNumberOfSuccessfulCallsWithRetryAttempt);
+        functionCounter("resilience.retry.calls", RESILIENCE4J, name, "failed_without_retry", metrics, Retry.Metrics::getNumberOfFailedCallsWithoutRetryAttempt);
+        functionCounter("resilience.retry.calls", RESILIENCE4J, name, "failed_with_retry", metrics, Retry.Metrics::getNumberOfFailedCallsWithRetryAttempt);
+
+        return () -> new ComponentSnapshot("retry", RESILIENCE4J, name, Map.of(
+            "successfulCallsWithoutRetry", metrics.getNumberOfSuccessfulCallsWithoutRetryAttempt(),
+            "successfulCallsWithRetry", metrics.getNumberOfSuccessfulCallsWithRetryAttempt(),
+            "failedCallsWithoutRetry", metrics.getNumberOfFailedCallsWithoutRetryAttempt(),
+            "failedCallsWithRetry", metrics.getNumberOfFailedCallsWithRetryAttempt()));
+    }
+
+    // Os mesmos LongAdders que o ReconfigurableRetry expoe no proprio bindTo, aqui com o prefixo e a tag component do binder
+    private Binding bindReconfigurableRetry(ReconfigurableRetry retry) {
+        String name = retry.getName();
+        functionCounter("resilience.retry.calls", RECONFIGURABLE, name, "successful_without_retry", retry, ReconfigurableRetry::getNumberOfSuccessfulCallsWithoutRetryAttempt);
+        functionCounter("resilience.retry.calls", RECONFIGURABLE, name, "successful_with_retry", retry, ReconfigurableRetry::getNumberOfSuccessfulCallsWithRetryAttempt);
+        functionCounter("resilience.retry.calls", RECONFIGURABLE, name, "failed_without_retry", retry, ReconfigurableRetry::getNumberOfFailedCallsWithoutRetryAttempt);
+        functionCounter("resilience.retry.calls", RECONFIGURABLE, name, "failed_with_retry", retry, ReconfigurableRetry::getNumberOfFailedCallsWithRetryAttempt);
+
+        return () -> new ComponentSnapshot("retry", RECONFIGURABLE, name, Map.of(
+            "successfulCallsWithoutRetry", retry.getNumberOfSuccessfulCallsWithoutRetryAttempt(),
+            "successfulCallsWithRetry", retry.getNumberOfSuccessfulCallsWithRetryAttempt(),
+            "failedCallsWithoutRetry", retry.getNumberOfFailedCallsWithoutRetryAttempt(),
+            "failedCallsWithRetry", retry.getNumberOfFailedCallsWithRetryAttempt()));
+    }
+
+    private <T> void functionCounter(String meter, String component, String name, String kind, T source, ToLongFunction<T> count) {
+        FunctionCounter.builder(meter, source, value -> count.applyAsLong(value))
+            .tag("name", name)
+            .tag("component", component)
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    @FunctionalInterface
+    private interface Binding {
+        ComponentSnapshot snapshot();
+    }
+
+    public static final class ComponentSnapshot {
+        private final String type;
+        private final String component;
+        private final String name;
+        private final Map<String, Number> values;
+
+        ComponentSnapshot(String type, String component, String name, Map<String, Number> values) {
+            this.type = type;
+            this.component = component;
+            this.name = name;
+            this.values = values;
+        }
+
+        public String getType() {
+            return type;
+        }
+
+        public String getComponent() {
+            return component;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, Number> getValues() {
+            return values;
+        }
+    }
+}
+
+//Neste exemplo, cada setupResilienceTriggers criava o proprio SimpleMeterRegistry/SimpleMetricRegistry e registrava de
+// novo CircuitBreakerMetrics, BulkheadMetrics e TimeLimiterMetrics, muitas vezes para instancias recem-criadas que
+// nenhuma chamada usava. O ResilienceMetricsBinder e um bean unico: o servico chama bind com as instancias que de fato
+// usa, os meters sao resolvidos uma vez por instancia e os consumidores de eventos guardam a referencia do
+// Counter/Timer. Retry, StripedCircuitBreaker e VirtualThreadTimeLimiter ja contam em LongAdders e so ganham
+// FunctionCounters e gauges, sem custo por chamada. Tudo fica em resilience.* com a tag component, entao o
+// StripedCircuitBreaker e o circuit breaker do Resilience4j com o mesmo nome aparecem como series distintas.
+// ResilienceMetricsBenchmark compara o record no Timer ja resolvido com a busca por nome e tags a cada chamada.
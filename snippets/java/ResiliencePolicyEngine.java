@@ -0,0 +1,239 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+// Laco de controle que le as metricas dos padroes de resiliencia e troca a configuracao das instancias em uso
+// (StripedCircuitBreaker.changeConfig, ReconfigurableRetry.changeConfig), sem recria-las
+public class ResiliencePolicyEngine implements AutoCloseable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResiliencePolicyEngine.class);
+
+    @FunctionalInterface
+    public interface Policy {
+        // Retorna true quando alterou alguma configuracao
+        boolean evaluate();
+    }
+
+    private final String name;
+    private final Duration period;
+    private final MeterRegistry registry;
+    private final Timer tickTimer;
+    private final List<RegisteredPolicy> policies = new CopyOnWriteArrayList<>();
+    private final ScheduledExecutorService scheduler;
+
+    public ResiliencePolicyEngine(String name, Duration period, MeterRegistry registry) {
+        this.name = name;
+        this.period = period;
+        this.registry = registry;
+        this.tickTimer = Timer.builder("resilience.policy.tick")
+            .tag("engine", name)
+            .register(registry);
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, name + "-policy-engine");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    public ResiliencePolicyEngine register(String policyName, Policy policy) {
+        policies.add(new RegisteredPolicy(policyName, policy));
+        return this;
+    }
+
+    // Atraso fixo entre execucoes: se uma avaliacao demorar, as seguintes nao se acumulam
+    public ResiliencePolicyEngine start() {
+        scheduler.scheduleWithFixedDelay(this::tick, period.toMillis(), period.toMillis(), TimeUnit.MILLISECONDS);
+        return this;
+    }
+
+    // Cada politica e isolada: uma excecao nao interrompe o agendamento (scheduleWithFixedDelay cancelaria as proximas
+    // execucoes) nem impede as demais politicas de rodar
+    void tick() {
+        long tickStart = System.nanoTime();
+        for (RegisteredPolicy registered : policies) {
+            long start = System.nanoTime();
+            try {
+                if (registered.policy.evaluate()) {
+                    registered.changes.increment();
+                    LOGGER.info("Policy {} of engine {} changed the resilience configuration", registered.name, name);
+                }
+            } catch (RuntimeException e) {
+                registered.errors.increment();
+                LOGGER.warn("Policy {} of engine {} failed", registered.name, name, e);
+            } finally {
+                registered.evaluation.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+        tickTimer.record(System.nanoTime() - tickStart, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public void close() {
+        scheduler.shutdownNow();
+    }
+
+    // Quando as falhas comecam a subir (metade de low) o limite cai para low e o circuito abre mais cedo, antes que a
+    // degradacao chegue a todas as chamadas. So quando a taxa volta para perto de zero (abaixo de um quarto de low) o
+    // limite volta para high, tolerando erros esparsos sem abrir; entre os dois o limite atual e mantido
+    public static Policy failureRateThreshold(StripedCircuitBreaker circuitBreaker, float low, float high) {
+        return () -> {
+            float failureRate = circuitBreaker.getFailureRate();
+            if (failureRate < 0) {
+                return false;
+            }
+            StripedCircuitBreaker.Config config = circuitBreaker.getConfig();
+            float target = failureRate >= low / 2 ? low : failureRate < low / 4 ? high : config.getFailureRateThreshold();
+            if (target == config.getFailureRateThreshold()) {
+                return false;
+            }
+            circuitBreaker.changeConfig(StripedCircuitBreaker.Config.from(config).failureRateThreshold(target).build());
+            return true;
+        };
+    }
+
+    // Com pouco trafego a janela dobra ate caber minimumNumberOfCalls; com trafego alto ela cai pela metade para que a
+    // taxa de falhas reflita os resultados mais recentes. As chamadas ja registradas sao copiadas para a nova janela.
+    // O tamanho e um numero de chamadas na janela COUNT_BASED e segundos na TIME_BASED, por isso cada tipo tem seus limites
+    public static Policy slidingWindowSize(StripedCircuitBreaker circuitBreaker, int minCalls, int maxCalls,
+                                           Duration minDuration, Duration maxDuration) {
+        int minSeconds = (int) Math.max(1, minDuration.toSeconds());
+        int maxSeconds = (int) Math.max(minSeconds, maxDuration.toSeconds());
+        return () -> {
+            StripedCircuitBreaker.Config config = circuitBreaker.getConfig();
+            boolean countBased = config.getSlidingWindowType() == StripedCircuitBreaker.SlidingWindowType.COUNT_BASED;
+            int minSize = countBased ? minCalls : minSeconds;
+            int maxSize = countBased ? maxCalls : maxSeconds;
+            long buffered = circuitBreaker.getNumberOfBufferedCalls();
+            int size = config.getSlidingWindowSize();
+            int target = size;
+            if (buffered < config.getMinimumNumberOfCalls()) {
+                target = Math.min(maxSize, size * 2);
+            } else if (buffered > 10L * config.getMinimumNumberOfCalls()) {
+                target = Math.max(minSize, size / 2);
+            }
+            if (target == size) {
+                return false;
+            }
+            circuitBreaker.changeConfig(StripedCircuitBreaker.Config.from(config)
+                .slidingWindow(config.getSlidingWindowType(), target)
+                .build());
+            return true;
+        };
+    }
+
+    // Se a maioria das chamadas que precisaram de retry falhou mesmo assim, o servico remoto esta indisponivel e mais
+    // tentativas so aumentam a carga: cai para minAttempts. Quando os retries voltam a ter sucesso, volta para maxAttempts
+    public static Policy maxAttempts(ReconfigurableRetry retry, int minAttempts, int maxAttempts) {
+        long[] last = new long[2];
+        return () -> {
+            long succeeded = retry.getNumberOfSuccessfulCallsWithRetryAttempt();
+            long failed = retry.getNumberOfFailedCallsWithRetryAttempt();
+            long succeededDelta = succeeded - last[0];
+            long failedDelta = failed - last[1];
+            last[0] = succeeded;
+            last[1] = failed;
+            if (succeededDelta + failedDelta == 0) {
+                return false;
+            }
+            int target = failedDelta > succeededDelta ? minAttempts : maxAttempts;
+            ReconfigurableRetry.Config config = retry.getConfig();
+            if (target == config.getMaxAttempts()) {
+                return false;
+            }
+            retry.changeConfig(ReconfigurableRetry.Config.from(config).maxAttempts(target).build());
+            return true;
+        };
+    }
+
+    // Percentil da janela acima do limite abre o circuito. A janela e descartada em seguida para que, quando o circuito
+    // voltar a fechar, a decisao use so latencias novas
+    public static Policy latencyOpensBreaker(LatencyHistogram latencies, double percentile, Duration threshold,
+                                             long minimumNumberOfCalls, CircuitBreaker circuitBreaker) {
+        long thresholdNanos = threshold.toNanos();
+        return () -> {
+            if (circuitBreaker.getState() != CircuitBreaker.State.CLOSED
+                || latencies.count() < minimumNumberOfCalls
+                || latencies.percentileNanos(percentile) <= thresholdNanos) {
+                return false;
+            }
+            circuitBreaker.transitionToOpenState();
+            latencies.reset();
+            return true;
+        };
+    }
+
+    // Percentil acima do limite corta as chamadas concorrentes pela metade, no maximo uma vez por janela do histograma
+    // (antes disso o percentil ainda inclui as latencias do limite anterior). Abaixo de metade do limite o bulkhead
+    // cresce 10% por tick ate o maxConcurrentCalls original; um limite que ja esta acima dele (um AdaptiveBulkhead que
+    // cresceu por conta propria) nao e puxado de volta
+    public static Policy latencyShrinksBulkhead(LatencyHistogram latencies, double percentile, Duration threshold,
+                                                long minimumNumberOfCalls, Bulkhead bulkhead, int minConcurrentCalls) {
+        long thresholdNanos = threshold.toNanos();
+        long windowNanos = latencies.getWindow().toNanos();
+        int maxConcurrentCalls = bulkhead.getBulkheadConfig().getMaxConcurrentCalls();
+        long[] lastShrink = {System.nanoTime() - windowNanos};
+        return () -> {
+            if (latencies.count() < minimumNumberOfCalls) {
+                return false;
+            }
+            BulkheadConfig config = bulkhead.getBulkheadConfig();
+            int current = config.getMaxConcurrentCalls();
+            long observed = latencies.percentileNanos(percentile);
+            int target = current;
+            if (observed > thresholdNanos && System.nanoTime() - lastShrink[0] >= windowNanos) {
+                target = Math.max(minConcurrentCalls, current / 2);
+                lastShrink[0] = System.nanoTime();
+            } else if (observed < thresholdNanos / 2 && current < maxConcurrentCalls) {
+                target = Math.min(maxConcurrentCalls, current + Math.max(1, current / 10));
+            }
+            if (target == current) {
+                return false;
+            }
+            bulkhead.changeConfig(BulkheadConfig.from(config).maxConcurrentCalls(target).build());
+            return true;
+        };
+    }
+
+    private final class RegisteredPolicy {
+        private final String name;
+        private final Policy policy;
+        private final Timer evaluation;
+        private final Counter changes;
+        private final Counter errors;
+
+        RegisteredPolicy(String name, Policy policy) {
+            this.name = name;
+            this.policy = policy;
+            this.evaluation = Timer.builder("resilience.policy.evaluation")
+                .tag("engine", ResiliencePolicyEngine.this.name)
+                .tag("policy", name)
+                .register(registry);
+            this.changes = Counter.builder("resilience.policy.changes")
+                .tag("engine", ResiliencePolicyEngine.this.name)
+                .tag("policy", name)
+                .register(registry);
+            this.errors = Counter.builder("resilience.policy.errors")
+                .tag("engine", ResiliencePolicyEngine.this.name)
+                .tag("policy", name)
+                .register(registry);
+        }
+    }
+}
+
+//Neste exemplo, o ResiliencePolicyEngine substitui o scheduleAtFixedRate que tentava alterar CircuitBreakerConfig e
+// RetryConfig (que sao imutaveis, entao nada mudava). As politicas leem as metricas das instancias em uso e chamam
+// changeConfig, que troca limites, tamanho da janela e numero de tentativas sem perder o estado do circuito, as chamadas
+// ja registradas na janela ou as chamadas em andamento. O custo do laco de controle aparece nos timers
+// resilience.policy.tick e resilience.policy.evaluation{policy=...}, e cada alteracao em resilience.policy.changes.
@@ -0,0 +1,132 @@
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+// Budget de retries compartilhado pelo processo: cada chamada com sucesso deposita retryRatio de um retry e cada retry
+// retira um inteiro, entao durante uma indisponibilidade os retries param assim que o saldo acaba, em vez de
+// multiplicar a carga sobre o servico remoto. minRetriesPerSecond garante alguns retries mesmo com pouco trafego.
+public class RetryBudget implements MeterBinder {
+    private static final long MILLI_TOKENS = 1000;
+
+    private final String name;
+    private final long depositPerSuccess;
+    private final long minRetriesPerSecond;
+    private final long maxBalance;
+    private final AtomicLong balance;
+    private final AtomicLong lastRefill = new AtomicLong(System.nanoTime());
+
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder exhausted = new LongAdder();
+
+    public RetryBudget(String name, double retryRatio, int minRetriesPerSecond, int maxRetries) {
+        this.name = name;
+        this.depositPerSuccess = (long) (retryRatio * MILLI_TOKENS);
+        this.minRetriesPerSecond = minRetriesPerSecond;
+        this.maxBalance = maxRetries * MILLI_TOKENS;
+        this.balance = new AtomicLong(maxBalance);
+    }
+
+    public void onSuccess() {
+        deposit(depositPerSuccess);
+    }
+
+    // O saldo acompanha o trafego com sucesso de todo o processo: cada chamada com sucesso de qualquer circuit breaker
+    // do registry, inclusive os criados depois, deposita retryRatio
+    public RetryBudget depositOnSuccess(CircuitBreakerRegistry registry) {
+        registry.getAllCircuitBreakers().forEach(this::depositOnSuccess);
+        registry.getEventPublisher().onEntryAdded(event -> depositOnSuccess(event.getAddedEntry()));
+        return this;
+    }
+
+    private void depositOnSuccess(CircuitBreaker circuitBreaker) {
+        circuitBreaker.getEventPublisher().onSuccess(event -> onSuccess());
+    }
+
+    public boolean tryAcquireRetry() {
+        refill();
+        long current;
+        do {
+            current = balance.get();
+            if (current < MILLI_TOKENS) {
+                exhausted.increment();
+                return false;
+            }
+        } while (!balance.compareAndSet(current, current - MILLI_TOKENS));
+        retries.increment();
+        return true;
+    }
+
+    // Para o RetryConfig.retryOnException do Resilience4j (sem retryExceptions, que seria combinado com OR e ignoraria
+    // o budget): uma falha que outra tentativa pode resolver so e repetida se houver saldo. Sem saldo o Resilience4j
+    // trata a falha como nao repetivel, relanca a propria excecao (que chega intacta ao fallback) e publica um
+    // RetryOnIgnoredErrorEvent, entao a chamada continua nas metricas e eventos do retry.
+    public Predicate<Throwable> retryOn(Predicate<Throwable> retryable) {
+        return e -> retryable.test(e) && tryAcquireRetry();
+    }
+
+    // O predicado e avaliado tambem na ultima falha, antes da checagem de maxAttempts; quando as tentativas se esgotam
+    // (RetryOnErrorEvent) o retry reservado nessa falha nao aconteceu e volta para o saldo
+    public Retry track(Retry retry) {
+        retry.getEventPublisher().onError(event -> refund());
+        return retry;
+    }
+
+    private void refund() {
+        retries.decrement();
+        deposit(MILLI_TOKENS);
+    }
+
+    public double getAvailableRetries() {
+        return (double) balance.get() / MILLI_TOKENS;
+    }
+
+    public long getExhaustedCount() {
+        return exhausted.sum();
+    }
+
+    // Apenas a thread que vence o CAS em lastRefill credita o tempo decorrido
+    private void refill() {
+        if (minRetriesPerSecond == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long last = lastRefill.get();
+        long earned = (now - last) * minRetriesPerSecond / 1_000_000;
+        if (earned > 0 && lastRefill.compareAndSet(last, now)) {
+            deposit(earned);
+        }
+    }
+
+    private void deposit(long amount) {
+        long current;
+        do {
+            current = balance.get();
+            if (current >= maxBalance) {
+                return;
+            }
+        } while (!balance.compareAndSet(current, Math.min(maxBalance, current + amount)));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        FunctionCounter.builder("retry.budget.retries", retries, LongAdder::sum)
+            .description("Retries allowed by the budget")
+            .tag("name", name)
+            .register(registry);
+        FunctionCounter.builder("retry.budget.exhausted", exhausted, LongAdder::sum)
+            .description("Retries skipped because the budget was empty")
+            .tag("name", name)
+            .register(registry);
+        Gauge.builder("retry.budget.available", this, RetryBudget::getAvailableRetries)
+            .tag("name", name)
+            .register(registry);
+    }
+}
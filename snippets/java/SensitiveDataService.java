@@ -1,12 +1,31 @@
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 @Service
 public class SensitiveDataService {
 
-    @Cacheable(value = "sensitiveDataCache", keyGenerator = "RSAEncryptionKeyGenerator")
-    public String getEncryptedSensitiveData() throws Exception {
+    private final EncryptionEngine encryptionEngine;
+
+    public SensitiveDataService(EncryptionEngine encryptionEngine) {
+        this.encryptionEngine = encryptionEngine;
+    }
+
+    // Devolve o texto puro. O sensitiveDataCache cifra o valor uma unica vez ao armazenar e so decifra na leitura
+    @Cacheable(value = "sensitiveDataCache", keyGenerator = "hmacKeyGenerator")
+    public String getSensitiveData() {
         String sensitiveData = "dados sensível";
-        return DataEncryption.encryptData(sensitiveData);
+        return sensitiveData;
+    }
+
+    // Contrato original mantido: quem chama recebe o dado cifrado (AES-GCM em Base64), nunca o texto puro. O Base64 ja
+    // cifrado fica no encryptedSensitiveDataCache, entao so um miss paga a cifragem; a chamada interna a
+    // getSensitiveData nao passa pelo proxy e nao consulta o sensitiveDataCache
+    @Cacheable(value = "encryptedSensitiveDataCache", keyGenerator = "hmacKeyGenerator")
+    public String getEncryptedSensitiveData() throws Exception {
+        byte[] encrypted = encryptionEngine.encrypt(getSensitiveData().getBytes(StandardCharsets.UTF_8));
+        return Base64.getEncoder().encodeToString(encrypted);
     }
 }
@@ -0,0 +1,106 @@
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+public class SingleFlight<K, V> {
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder originated = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    public SingleFlight(String name, MeterRegistry meterRegistry) {
+        FunctionCounter.builder("singleflight.calls", originated, LongAdder::sum)
+            .description("Calls that went to the decorated service")
+            .tag("name", name)
+            .tag("kind", "originated")
+            .register(meterRegistry);
+        FunctionCounter.builder("singleflight.calls", coalesced, LongAdder::sum)
+            .description("Calls that joined a call already in flight for the same key")
+            .tag("name", name)
+            .tag("kind", "coalesced")
+            .register(meterRegistry);
+    }
+
+    // Apenas a primeira chamada para a chave executa; as concorrentes recebem o mesmo resultado
+    public CompletableFuture<V> executeAsync(K key, Supplier<CompletableFuture<V>> call) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return existing.copy();
+        }
+        originated.increment();
+        try {
+            call.get().whenComplete((value, error) -> complete(key, promise, value, error));
+        } catch (Throwable e) {
+            // qualquer Throwable (inclusive Error ou checked lancada via sneaky throw) precisa liberar a chave, senao
+            // as chamadas seguintes para ela recebem um future que nunca completa
+            complete(key, promise, null, e);
+            if (e instanceof Error) {
+                throw e;
+            }
+        }
+        return promise.copy();
+    }
+
+    // Versao sincrona: quem originou a chamada a executa na propria thread e os demais aguardam o resultado
+    public V execute(K key, Supplier<V> call) {
+        CompletableFuture<V> promise = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, promise);
+        if (existing != null) {
+            coalesced.increment();
+            return join(existing);
+        }
+        originated.increment();
+        V value;
+        try {
+            value = call.get();
+        } catch (Throwable e) {
+            complete(key, promise, null, e);
+            throw e;
+        }
+        complete(key, promise, value, null);
+        return value;
+    }
+
+    public long originatedCalls() {
+        return originated.sum();
+    }
+
+    public long coalescedCalls() {
+        return coalesced.sum();
+    }
+
+    private void complete(K key, CompletableFuture<V> promise, V value, Throwable error) {
+        // remove antes de completar para que chamadas posteriores nao recebam um resultado antigo
+        inFlight.remove(key, promise);
+        if (error != null) {
+            promise.completeExceptionally(error);
+        } else {
+            promise.complete(value);
+        }
+    }
+
+    private static <V> V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+}
+
+//Neste exemplo, quando um id popular expira, apenas uma chamada por chave vai ao servico remoto e as demais
+// compartilham o mesmo CompletableFuture, consumindo uma unica permissao do bulkhead e uma chamada do circuit breaker.
+// As metricas singleflight.calls{kind=originated|coalesced} mostram quantas chamadas foram economizadas.
@@ -0,0 +1,248 @@
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Janela deslizante sem lock global: os totais sao LongAdders (contadores distribuidos em celulas por CPU) que
+// recebem cada resultado e perdem o que sai da janela, entao as taxas sao lidas em O(1)
+public interface SlidingWindow {
+
+    void record(long nowNanos, boolean failure, boolean slow);
+
+    long totalCalls(long nowNanos);
+
+    long failedCalls(long nowNanos);
+
+    long slowCalls(long nowNanos);
+
+    // Copia as chamadas ainda dentro desta janela para outra, usada quando o tipo ou o tamanho muda em tempo de execucao
+    void copyTo(SlidingWindow target, long nowNanos);
+
+    // Registra chamadas ja agregadas (sem a ordem em que aconteceram)
+    void add(long nowNanos, long calls, long failures, long slow);
+
+    final class Count implements SlidingWindow {
+        private static final int PRESENT = 1;
+        private static final int FAILURE = 2;
+        private static final int SLOW = 4;
+
+        private final AtomicIntegerArray outcomes;
+        private final AtomicLong cursor = new AtomicLong();
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        public Count(int size) {
+            this.outcomes = new AtomicIntegerArray(size);
+        }
+
+        @Override
+        public void record(long nowNanos, boolean failure, boolean slow) {
+            int outcome = PRESENT | (failure ? FAILURE : 0) | (slow ? SLOW : 0);
+            int slot = (int) (cursor.getAndIncrement() % outcomes.length());
+            int evicted = outcomes.getAndSet(slot, outcome);
+            add(outcome, 1);
+            if (evicted != 0) {
+                add(evicted, -1);
+            }
+        }
+
+        private void add(int outcome, int delta) {
+            calls.add(delta);
+            if ((outcome & FAILURE) != 0) {
+                failures.add(delta);
+            }
+            if ((outcome & SLOW) != 0) {
+                slowCalls.add(delta);
+            }
+        }
+
+        // Repete os resultados mais recentes na ordem original; se o destino for menor, os mais antigos saem dele
+        @Override
+        public void copyTo(SlidingWindow target, long nowNanos) {
+            long end = cursor.get();
+            for (long i = Math.max(0, end - outcomes.length()); i < end; i++) {
+                int outcome = outcomes.get((int) (i % outcomes.length()));
+                if (outcome != 0) {
+                    target.record(nowNanos, (outcome & FAILURE) != 0, (outcome & SLOW) != 0);
+                }
+            }
+        }
+
+        // Mantem as proporcoes de falhas e chamadas lentas quando ha mais chamadas do que cabem na janela
+        @Override
+        public void add(long nowNanos, long calls, long failures, long slow) {
+            long n = Math.min(calls, outcomes.length());
+            if (n == 0) {
+                return;
+            }
+            long failed = Math.round((double) failures * n / calls);
+            long slowed = Math.round((double) slow * n / calls);
+            for (long i = 0; i < n; i++) {
+                record(nowNanos, i < failed, i < slowed);
+            }
+        }
+
+        @Override
+        public long totalCalls(long nowNanos) {
+            return calls.sum();
+        }
+
+        @Override
+        public long failedCalls(long nowNanos) {
+            return failures.sum();
+        }
+
+        @Override
+        public long slowCalls(long nowNanos) {
+            return slowCalls.sum();
+        }
+    }
+
+    final class Time implements SlidingWindow {
+        private static final long BUCKET_NANOS = 1_000_000_000L;
+
+        private final Bucket[] buckets;
+        // So muda depois que os buckets que sairam da janela foram esvaziados
+        private volatile long currentEpoch;
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder failures = new LongAdder();
+        private final LongAdder slowCalls = new LongAdder();
+
+        public Time(int seconds, long nowNanos) {
+            this.buckets = new Bucket[seconds];
+            for (int i = 0; i < seconds; i++) {
+                buckets[i] = new Bucket();
+            }
+            this.currentEpoch = Math.floorDiv(nowNanos, BUCKET_NANOS);
+        }
+
+        @Override
+        public void record(long nowNanos, boolean failure, boolean slow) {
+            Bucket bucket = bucket(advance(nowNanos));
+            bucket.calls.increment();
+            calls.increment();
+            if (failure) {
+                bucket.failures.increment();
+                failures.increment();
+            }
+            if (slow) {
+                bucket.slowCalls.increment();
+                slowCalls.increment();
+            }
+        }
+
+        // Dentro do mesmo bucket nao ha lock. Na virada a thread que chega primeiro esvazia os buckets que sairam da
+        // janela e so entao publica a nova epoca; as outras esperam no lock em vez de gravar no bucket que ainda esta
+        // sendo esvaziado (o que apagaria a chamada delas). O lock so e disputado uma vez por bucket.
+        private long advance(long nowNanos) {
+            long epoch = Math.floorDiv(nowNanos, BUCKET_NANOS);
+            long current = currentEpoch;
+            if (epoch <= current) {
+                return current;
+            }
+            synchronized (this) {
+                long last = currentEpoch;
+                if (epoch > last) {
+                    for (long e = Math.max(last + 1, epoch - buckets.length + 1); e <= epoch; e++) {
+                        Bucket bucket = bucket(e);
+                        calls.add(-bucket.calls.drain());
+                        failures.add(-bucket.failures.drain());
+                        slowCalls.add(-bucket.slowCalls.drain());
+                    }
+                    currentEpoch = epoch;
+                }
+                return currentEpoch;
+            }
+        }
+
+        // System.nanoTime pode ser negativo: floorMod mantem o indice dentro do array
+        private Bucket bucket(long epoch) {
+            return buckets[Math.floorMod(epoch, buckets.length)];
+        }
+
+        // Entre janelas por tempo os buckets sao copiados pela epoca (os dois usam a mesma base de tempo)
+        @Override
+        public void copyTo(SlidingWindow target, long nowNanos) {
+            long epoch = advance(nowNanos);
+            if (!(target instanceof Time)) {
+                target.add(nowNanos, calls.sum(), failures.sum(), slowCalls.sum());
+                return;
+            }
+            Time other = (Time) target;
+            long otherEpoch = other.advance(nowNanos);
+            for (long e = Math.max(epoch - buckets.length, otherEpoch - other.buckets.length) + 1; e <= epoch; e++) {
+                Bucket from = bucket(e);
+                Bucket to = other.bucket(e);
+                long c = from.calls.current();
+                long f = from.failures.current();
+                long s = from.slowCalls.current();
+                to.calls.add(c);
+                to.failures.add(f);
+                to.slowCalls.add(s);
+                other.calls.add(c);
+                other.failures.add(f);
+                other.slowCalls.add(s);
+            }
+        }
+
+        @Override
+        public void add(long nowNanos, long calls, long failures, long slow) {
+            Bucket bucket = bucket(advance(nowNanos));
+            bucket.calls.add(calls);
+            bucket.failures.add(failures);
+            bucket.slowCalls.add(slow);
+            this.calls.add(calls);
+            this.failures.add(failures);
+            this.slowCalls.add(slow);
+        }
+
+        @Override
+        public long totalCalls(long nowNanos) {
+            advance(nowNanos);
+            return calls.sum();
+        }
+
+        @Override
+        public long failedCalls(long nowNanos) {
+            advance(nowNanos);
+            return failures.sum();
+        }
+
+        @Override
+        public long slowCalls(long nowNanos) {
+            advance(nowNanos);
+            return slowCalls.sum();
+        }
+
+        private static final class Bucket {
+            private final Counter calls = new Counter();
+            private final Counter failures = new Counter();
+            private final Counter slowCalls = new Counter();
+        }
+
+        // LongAdder nunca zerado: drain move a linha de base, entao incrementos concorrentes nao se perdem
+        private static final class Counter {
+            private final LongAdder adder = new LongAdder();
+            private volatile long base;
+
+            void increment() {
+                adder.increment();
+            }
+
+            void add(long delta) {
+                adder.add(delta);
+            }
+
+            long current() {
+                return adder.sum() - base;
+            }
+
+            long drain() {
+                long sum = adder.sum();
+                long drained = sum - base;
+                base = sum;
+                return drained;
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import java.time.Duration;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Requer Java 21 (virtual threads). Guarda o ultimo valor bom de cada chave para que o fallback devolva esse valor, com a
+// idade, em vez de uma resposta fixa; a revalidacao roda em background e so quando o circuit breaker permite chamadas.
+public class StaleWhileRevalidateCache<K, V> {
+    private final CircuitBreaker circuitBreaker;
+    private final long refreshAfterNanos;
+    private final Cache<K, Entry<V>> lastKnownGood;
+    private final SingleFlight<K, V> revalidations;
+    private final ExecutorService executor;
+    private final Timer staleAge;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder skipped = new LongAdder();
+
+    // refreshAfter evita revalidar a cada fallback um valor que acabou de ser gravado; maxStale e a idade maxima servida
+    public StaleWhileRevalidateCache(String name, CircuitBreaker circuitBreaker, long maximumSize, Duration refreshAfter,
+                                     Duration maxStale, MeterRegistry meterRegistry) {
+        this.circuitBreaker = circuitBreaker;
+        this.refreshAfterNanos = refreshAfter.toNanos();
+        this.lastKnownGood = Caffeine.newBuilder()
+            .maximumSize(maximumSize)
+            .expireAfterWrite(maxStale)
+            .build();
+        this.revalidations = new SingleFlight<>(name + ".revalidate", meterRegistry);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(name + "-revalidate-", 0).factory());
+        this.staleAge = Timer.builder("cache.stale.age")
+            .description("Age of the values served by the fallback")
+            .tag("name", name)
+            .register(meterRegistry);
+        counter(meterRegistry, name, "cache.stale.requests", "hit", hits);
+        counter(meterRegistry, name, "cache.stale.requests", "miss", misses);
+        counter(meterRegistry, name, "cache.stale.revalidations", "started", started);
+        counter(meterRegistry, name, "cache.stale.revalidations", "failed", failed);
+        counter(meterRegistry, name, "cache.stale.revalidations", "skipped", skipped);
+    }
+
+    // Chamado no caminho de sucesso; devolve o proprio valor para poder envolver o retorno da chamada
+    public V put(K key, V value) {
+        if (value != null) {
+            lastKnownGood.put(key, new Entry<>(value, System.nanoTime()));
+        }
+        return value;
+    }
+
+    // Chamado no fallback: e so uma consulta em memoria. A revalidacao deve passar pelo circuit breaker (e demais
+    // decoradores), e chamadas concorrentes para a mesma chave compartilham uma unica revalidacao.
+    public Optional<Stale<V>> getStale(K key, Supplier<V> revalidation) {
+        Entry<V> entry = lastKnownGood.getIfPresent(key);
+        if (entry == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        long ageNanos = System.nanoTime() - entry.writtenNanos;
+        staleAge.record(ageNanos, TimeUnit.NANOSECONDS);
+        if (ageNanos >= refreshAfterNanos) {
+            revalidate(key, revalidation);
+        }
+        return Optional.of(new Stale<>(entry.value, Duration.ofNanos(ageNanos)));
+    }
+
+    private void revalidate(K key, Supplier<V> revalidation) {
+        CircuitBreaker.State state = circuitBreaker.getState();
+        if (state == CircuitBreaker.State.OPEN || state == CircuitBreaker.State.FORCED_OPEN) {
+            skipped.increment();
+            return;
+        }
+        revalidations.executeAsync(key, () -> {
+            started.increment();
+            return CompletableFuture.supplyAsync(revalidation, executor);
+        }).whenComplete((value, error) -> {
+            if (error != null) {
+                failed.increment();
+            } else {
+                put(key, value);
+            }
+        });
+    }
+
+    private static void counter(MeterRegistry registry, String name, String meter, String kind, LongAdder counter) {
+        FunctionCounter.builder(meter, counter, LongAdder::sum)
+            .tag("name", name)
+            .tag("kind", kind)
+            .register(registry);
+    }
+
+    private static final class Entry<V> {
+        private final V value;
+        private final long writtenNanos;
+
+        private Entry(V value, long writtenNanos) {
+            this.value = value;
+            this.writtenNanos = writtenNanos;
+        }
+    }
+
+    public static final class Stale<V> {
+        private final V value;
+        private final Duration age;
+
+        private Stale(V value, Duration age) {
+            this.value = value;
+            this.age = age;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public Duration getAge() {
+            return age;
+        }
+    }
+}
+
+//Neste exemplo, quando o circuit breaker abre o fallback deixa de devolver "User not found"/"Too many requests" (ou de ir
+// a fila AMQ) e passa a devolver a ultima copia boa do usuario, junto com a idade, a partir de um Caffeine limitado por
+// tamanho e por idade maxima. Com o circuito aberto o fallback custa uma consulta em memoria; a revalidacao so e
+// disparada quando o circuito esta fechado ou meio aberto, roda em uma virtual thread e e compartilhada pelas chamadas
+// concorrentes via SingleFlight. As metricas cache.stale.requests{kind=hit|miss},
+// cache.stale.revalidations{kind=started|failed|skipped} e cache.stale.age mostram quanto e quao velho e o que e servido.
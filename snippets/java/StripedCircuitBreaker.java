@@ -0,0 +1,328 @@
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+public class StripedCircuitBreaker {
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final String name;
+    private volatile Config config;
+    private final AtomicReference<StateHolder> state;
+
+    public StripedCircuitBreaker(String name, Config config) {
+        this.name = name;
+        this.config = config;
+        this.state = new AtomicReference<>(closed(System.nanoTime()));
+    }
+
+    public static StripedCircuitBreaker of(String name, Config config) {
+        return new StripedCircuitBreaker(name, config);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public State getState() {
+        return state.get().state;
+    }
+
+    public Config getConfig() {
+        return config;
+    }
+
+    // Troca a configuracao sem recriar o circuit breaker: o estado atual e as chamadas em andamento continuam valendo, e
+    // se o tipo ou o tamanho da janela mudar, as chamadas ja registradas sao copiadas para a nova janela (um resultado
+    // gravado na janela antiga durante a copia pode ficar de fora)
+    public void changeConfig(Config newConfig) {
+        Config old = config;
+        config = newConfig;
+        if (old.slidingWindowType == newConfig.slidingWindowType && old.slidingWindowSize == newConfig.slidingWindowSize) {
+            return;
+        }
+        StateHolder current;
+        StateHolder resized;
+        do {
+            current = state.get();
+            // a janela do HALF_OPEN e dimensionada por permittedNumberOfCallsInHalfOpenState; a proxima ja usa a nova config
+            if (current.state == State.HALF_OPEN) {
+                return;
+            }
+            long now = System.nanoTime();
+            SlidingWindow window = window(newConfig, now);
+            current.window.copyTo(window, now);
+            resized = new StateHolder(current.state, current.openedAt, window, 0);
+        } while (!state.compareAndSet(current, resized));
+    }
+
+    public <T> T executeSupplier(Supplier<T> supplier) {
+        if (!tryAcquirePermission()) {
+            throw new CallNotPermittedException(name);
+        }
+        long start = System.nanoTime();
+        try {
+            T result = supplier.get();
+            onSuccess(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            return result;
+        } catch (Throwable e) {
+            // Errors (OutOfMemoryError, StackOverflowError) tambem contam como falha; senao a permissao do half-open
+            // nunca seria devolvida
+            onError(System.nanoTime() - start, TimeUnit.NANOSECONDS, e);
+            throw e;
+        }
+    }
+
+    public boolean tryAcquirePermission() {
+        StateHolder current = state.get();
+        switch (current.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - current.openedAt < config.waitDurationInOpenState.toNanos()) {
+                    return false;
+                }
+                state.compareAndSet(current, halfOpen());
+                return tryAcquirePermission();
+            default:
+                return current.halfOpenPermits.getAndDecrement() > 0;
+        }
+    }
+
+    public void onSuccess(long duration, TimeUnit unit) {
+        record(unit.toNanos(duration), false);
+    }
+
+    public void onError(long duration, TimeUnit unit, Throwable throwable) {
+        record(unit.toNanos(duration), true);
+    }
+
+    public void transitionToOpenState() {
+        state.set(open(System.nanoTime(), state.get().window));
+    }
+
+    public void transitionToClosedState() {
+        state.set(closed(System.nanoTime()));
+    }
+
+    public float getFailureRate() {
+        StateHolder current = state.get();
+        long now = System.nanoTime();
+        return rate(current.window.failedCalls(now), current.window.totalCalls(now));
+    }
+
+    public float getSlowCallRate() {
+        StateHolder current = state.get();
+        long now = System.nanoTime();
+        return rate(current.window.slowCalls(now), current.window.totalCalls(now));
+    }
+
+    public long getNumberOfBufferedCalls() {
+        return state.get().window.totalCalls(System.nanoTime());
+    }
+
+    private void record(long durationNanos, boolean failure) {
+        StateHolder current = state.get();
+        if (current.state == State.OPEN) {
+            return;
+        }
+        Config config = this.config;
+        long now = System.nanoTime();
+        boolean slow = durationNanos >= config.slowCallDurationThreshold.toNanos();
+        current.window.record(now, failure, slow);
+
+        long calls = current.window.totalCalls(now);
+        long required = current.state == State.HALF_OPEN ? config.permittedNumberOfCallsInHalfOpenState : config.minimumNumberOfCalls;
+        if (calls < required) {
+            return;
+        }
+        boolean exceeded = rate(current.window.failedCalls(now), calls) >= config.failureRateThreshold
+            || rate(current.window.slowCalls(now), calls) >= config.slowCallRateThreshold;
+        if (exceeded) {
+            state.compareAndSet(current, open(now, current.window));
+        } else if (current.state == State.HALF_OPEN) {
+            state.compareAndSet(current, closed(now));
+        }
+    }
+
+    private static float rate(long part, long total) {
+        return total == 0 ? -1 : part * 100f / total;
+    }
+
+    private StateHolder closed(long now) {
+        return new StateHolder(State.CLOSED, 0, window(config, now), 0);
+    }
+
+    private static SlidingWindow window(Config config, long now) {
+        return config.slidingWindowType == SlidingWindowType.COUNT_BASED
+            ? new SlidingWindow.Count(config.slidingWindowSize)
+            : new SlidingWindow.Time(config.slidingWindowSize, now);
+    }
+
+    // Mantem a janela que abriu o circuito para que as metricas continuem disponiveis enquanto ele estiver aberto
+    private StateHolder open(long now, SlidingWindow window) {
+        return new StateHolder(State.OPEN, now, window, 0);
+    }
+
+    private StateHolder halfOpen() {
+        int permitted = config.permittedNumberOfCallsInHalfOpenState;
+        return new StateHolder(State.HALF_OPEN, 0, new SlidingWindow.Count(permitted), permitted);
+    }
+
+    // Cada transicao troca o objeto inteiro via CAS; o caminho de gravacao apenas le a referencia atual
+    private static final class StateHolder {
+        private final State state;
+        private final long openedAt;
+        private final SlidingWindow window;
+        private final AtomicInteger halfOpenPermits;
+
+        StateHolder(State state, long openedAt, SlidingWindow window, int halfOpenPermits) {
+            this.state = state;
+            this.openedAt = openedAt;
+            this.window = window;
+            this.halfOpenPermits = new AtomicInteger(halfOpenPermits);
+        }
+    }
+
+    public enum SlidingWindowType { COUNT_BASED, TIME_BASED }
+
+    public static class CallNotPermittedException extends RuntimeException {
+        public CallNotPermittedException(String name) {
+            super("CircuitBreaker '" + name + "' is OPEN and does not permit further calls");
+        }
+    }
+
+    public static final class Config {
+        private final float failureRateThreshold;
+        private final float slowCallRateThreshold;
+        private final Duration slowCallDurationThreshold;
+        private final SlidingWindowType slidingWindowType;
+        private final int slidingWindowSize;
+        private final int minimumNumberOfCalls;
+        private final Duration waitDurationInOpenState;
+        private final int permittedNumberOfCallsInHalfOpenState;
+
+        private Config(Builder builder) {
+            this.failureRateThreshold = builder.failureRateThreshold;
+            this.slowCallRateThreshold = builder.slowCallRateThreshold;
+            this.slowCallDurationThreshold = builder.slowCallDurationThreshold;
+            this.slidingWindowType = builder.slidingWindowType;
+            this.slidingWindowSize = builder.slidingWindowSize;
+            this.minimumNumberOfCalls = builder.minimumNumberOfCalls;
+            this.waitDurationInOpenState = builder.waitDurationInOpenState;
+            this.permittedNumberOfCallsInHalfOpenState = builder.permittedNumberOfCallsInHalfOpenState;
+        }
+
+        public static Builder custom() {
+            return new Builder();
+        }
+
+        public static Config ofDefaults() {
+            return custom().build();
+        }
+
+        public static Builder from(Config config) {
+            return new Builder()
+                .failureRateThreshold(config.failureRateThreshold)
+                .slowCallRateThreshold(config.slowCallRateThreshold)
+                .slowCallDurationThreshold(config.slowCallDurationThreshold)
+                .slidingWindow(config.slidingWindowType, config.slidingWindowSize)
+                .minimumNumberOfCalls(config.minimumNumberOfCalls)
+                .waitDurationInOpenState(config.waitDurationInOpenState)
+                .permittedNumberOfCallsInHalfOpenState(config.permittedNumberOfCallsInHalfOpenState);
+        }
+
+        public float getFailureRateThreshold() {
+            return failureRateThreshold;
+        }
+
+        public float getSlowCallRateThreshold() {
+            return slowCallRateThreshold;
+        }
+
+        public Duration getSlowCallDurationThreshold() {
+            return slowCallDurationThreshold;
+        }
+
+        public SlidingWindowType getSlidingWindowType() {
+            return slidingWindowType;
+        }
+
+        public int getSlidingWindowSize() {
+            return slidingWindowSize;
+        }
+
+        public int getMinimumNumberOfCalls() {
+            return minimumNumberOfCalls;
+        }
+
+        public Duration getWaitDurationInOpenState() {
+            return waitDurationInOpenState;
+        }
+
+        public int getPermittedNumberOfCallsInHalfOpenState() {
+            return permittedNumberOfCallsInHalfOpenState;
+        }
+
+        // Valores padrao iguais aos do CircuitBreakerConfig do Resilience4j
+        public static final class Builder {
+            private float failureRateThreshold = 50;
+            private float slowCallRateThreshold = 100;
+            private Duration slowCallDurationThreshold = Duration.ofSeconds(60);
+            private SlidingWindowType slidingWindowType = SlidingWindowType.COUNT_BASED;
+            private int slidingWindowSize = 100;
+            private int minimumNumberOfCalls = 100;
+            private Duration waitDurationInOpenState = Duration.ofSeconds(60);
+            private int permittedNumberOfCallsInHalfOpenState = 10;
+
+            public Builder failureRateThreshold(float failureRateThreshold) {
+                this.failureRateThreshold = failureRateThreshold;
+                return this;
+            }
+
+            public Builder slowCallRateThreshold(float slowCallRateThreshold) {
+                this.slowCallRateThreshold = slowCallRateThreshold;
+                return this;
+            }
+
+            public Builder slowCallDurationThreshold(Duration slowCallDurationThreshold) {
+                this.slowCallDurationThreshold = slowCallDurationThreshold;
+                return this;
+            }
+
+            public Builder slidingWindow(SlidingWindowType slidingWindowType, int slidingWindowSize) {
+                this.slidingWindowType = slidingWindowType;
+                this.slidingWindowSize = slidingWindowSize;
+                return this;
+            }
+
+            public Builder minimumNumberOfCalls(int minimumNumberOfCalls) {
+                this.minimumNumberOfCalls = minimumNumberOfCalls;
+                return this;
+            }
+
+            public Builder waitDurationInOpenState(Duration waitDurationInOpenState) {
+                this.waitDurationInOpenState = waitDurationInOpenState;
+                return this;
+            }
+
+            public Builder permittedNumberOfCallsInHalfOpenState(int permittedNumberOfCallsInHalfOpenState) {
+                this.permittedNumberOfCallsInHalfOpenState = permittedNumberOfCallsInHalfOpenState;
+                return this;
+            }
+
+            public Config build() {
+                if (slidingWindowSize < 1 || minimumNumberOfCalls < 1 || permittedNumberOfCallsInHalfOpenState < 1) {
+                    throw new IllegalArgumentException("Window size, minimum number of calls and half-open calls must be positive");
+                }
+                return new Config(this);
+            }
+        }
+    }
+}
+
+//Neste exemplo, o StripedCircuitBreaker segue o mesmo modelo do CircuitBreaker do Resilience4j (e dos exemplos em Rust e
+// Python), mas sem Mutex: o estado e trocado via CAS e o resultado de cada chamada vai para uma SlidingWindow (por
+// contagem ou por tempo) com contadores LongAdder, entao taxa de falhas e de chamadas lentas sao lidas em O(1).
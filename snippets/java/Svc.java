@@ -1,56 +1,55 @@
 @Service
 public class UserService {
-
-    private final TimeLimiter timeLimiter;
+    private final VirtualThreadTimeLimiter timeLimiter;
     private final Bulkhead bulkhead;
     private final CircuitBreaker circuitBreaker;
-    private final Metrics metrics;
+    private final ResilienceMetricsBinder metricsBinder;
     private final Tracer tracer;
-    private final RabbitTemplate rabbitTemplate;
+    private final AsyncFallbackPublisher fallbackPublisher;
+    private final SingleFlight<String, String> userCalls;
+    private final Hedger hedger;
+    private final DecoratorPipeline<String, String> userPipeline;
 
     @Autowired
-    public UserService(TimeLimiter timeLimiter, Bulkhead bulkhead, CircuitBreaker circuitBreaker, Metrics metrics, Tracer tracer, RabbitTemplate rabbitTemplate) {
+    public UserService(VirtualThreadTimeLimiter timeLimiter, Bulkhead bulkhead, CircuitBreaker circuitBreaker, ResilienceMetricsBinder metricsBinder, Tracer tracer, AsyncFallbackPublisher fallbackPublisher, MeterRegistry meterRegistry, Hedger.Registry hedgers) {
         this.timeLimiter = timeLimiter;
         this.bulkhead = bulkhead;
         this.circuitBreaker = circuitBreaker;
-        this.metrics = metrics;
+        this.metricsBinder = metricsBinder;
         this.tracer = tracer;
-        this.rabbitTemplate = rabbitTemplate;
+        this.fallbackPublisher = fallbackPublisher;
+        this.userCalls = new SingleFlight<>("getUser", meterRegistry);
+        this.hedger = hedgers.hedger("userService.getUserFromRemoteService");
+        // o circuit breaker ve uma unica chamada logica, mesmo quando o hedger envia uma segunda tentativa; o bulkhead
+        // fica dentro do hedger para que cada tentativa que sai ocupe uma vaga
+        this.userPipeline = DecoratorPipeline.<String, String>builder()
+            .with(DecoratorPipeline.circuitBreaker(circuitBreaker))
+            .with(DecoratorPipeline.hedger(hedger))
+            .with(DecoratorPipeline.bulkhead(bulkhead))
+            .build(this::getUserFromRemoteService);
     }
 
     public void setupResilienceTriggers() {
-        CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.ofDefaults();
-        CircuitBreakerConfig circuitBreakerConfig = circuitBreakerRegistry.getDefaultConfig();
-        CircuitBreaker circuitBreaker = circuitBreakerRegistry.circuitBreaker("userServiceCircuitBreaker", circuitBreakerConfig);
-
-        BulkheadRegistry bulkheadRegistry = BulkheadRegistry.ofDefaults();
-        BulkheadConfig bulkheadConfig = bulkheadRegistry.getDefaultConfig();
-        Bulkhead bulkhead = bulkheadRegistry.bulkhead("userServiceBulkhead", bulkheadConfig);
-
-        TimeLimiterRegistry timeLimiterRegistry = TimeLimiterRegistry.ofDefaults();
-        TimeLimiterConfig timeLimiterConfig = timeLimiterRegistry.getDefaultConfig();
-        TimeLimiter timeLimiter = timeLimiterRegistry.timeLimiter("userServiceTimeLimiter", timeLimiterConfig);
-
-        MetricRegistry metricRegistry = new SimpleMetricRegistry();
-        metrics.registerCircuitBreakerMetrics(circuitBreaker, metricRegistry);
-        metrics.registerBulkheadMetrics(bulkhead, metricRegistry);
-        metrics.registerTimeLimiterMetrics(timeLimiter, metricRegistry);
+        // As mesmas instancias usadas nas chamadas, registradas uma vez no MeterRegistry compartilhado
+        metricsBinder.bind(circuitBreaker)
+            .bind(bulkhead)
+            .bind(timeLimiter);
     }
 
-    public String getUser(String id) {
-        try {
-            return timeLimiter.executeCheckedSupplier(() -> getUserBlocking(id), UserNotFoundException.class);
-        } catch (UserNotFoundException e) {
-            return getUserFallback(id);
-        }
+    public CompletableFuture<String> getUser(String id) {
+        // Chamadas concorrentes para o mesmo id compartilham uma unica passagem pelo time limiter, bulkhead e circuit breaker
+        return userCalls.executeAsync(id, () -> timeLimiter.executeAsync(() -> getUserBlocking(id))
+            .exceptionallyCompose(error -> {
+                Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+                if (cause instanceof UserNotFoundException || cause instanceof TimeoutException) {
+                    return getUserFallback(id);
+                }
+                return CompletableFuture.failedFuture(cause);
+            }));
     }
 
     public String getUserBlocking(String id) {
-        return bulkhead.executeSupplier(() -> {
-            return circuitBreaker.executeSupplier(() -> {
-                return getUserFromRemoteService(id);
-            });
-        });
+        return userPipeline.apply(id);
     }
 
     public String getUserFromRemoteService(String id) {
@@ -61,15 +60,7 @@ public class UserService {
         return "Usuário " + id;
     }
 
-    public String getUserFallback(String id) {
-        // Inicia a transação de compensação para buscar o usuário na fila AMQ
-        Compensable<String> compensable = Compensate.with(() -> {
-            return rabbitTemplate.convertSendAndReceive("userQueue", id, m -> {
-                m.getMessageProperties().setHeader("Fallback", "true");
-                return m;
-            });
-        }).build();
-        // Executa a transação de compensação
-        return compensable.execute();
+    public CompletableFuture<String> getUserFallback(String id) {
+        return fallbackPublisher.request("userQueue", id, Map.of("Fallback", "true"), null);
     }
 }
\ No newline at end of file
@@ -0,0 +1,321 @@
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+public class TokenizationVault {
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final String TOKEN_PREFIX = "tok_";
+    private static final int SNAPSHOT_MAGIC = 0x544F4B31; // "TOK1"
+    private static final int MAC_POOL_SIZE = Runtime.getRuntime().availableProcessors() * 2;
+
+    private final SecretKeySpec key;
+    private final BlockingQueue<Mac> macs = new ArrayBlockingQueue<>(MAC_POOL_SIZE);
+    private final EncryptionEngine encryptionEngine;
+    private final Stripe[] stripes;
+
+    public TokenizationVault(byte[] hmacSecret, EncryptionEngine encryptionEngine) {
+        this(hmacSecret, encryptionEngine, 64, 1_000_000);
+    }
+
+    // Um token emitido precisa continuar resolvivel, entao nao ha eviction: cheio, o cofre recusa valores novos
+    public TokenizationVault(byte[] hmacSecret, EncryptionEngine encryptionEngine, int concurrency, int maxEntries) {
+        this.key = new SecretKeySpec(hmacSecret, ALGORITHM);
+        this.encryptionEngine = encryptionEngine;
+        this.stripes = new Stripe[Integer.highestOneBit(Math.max(1, concurrency - 1)) << 1];
+        AtomicInteger entries = new AtomicInteger();
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe(entries, maxEntries);
+        }
+    }
+
+    // O mesmo valor sempre gera o mesmo token: 64 bits do HMAC identificam o token e outros 64 bits
+    // confirmam que o valor armazenado e realmente o mesmo
+    public String tokenize(String value) {
+        byte[] plaintext = value.getBytes(StandardCharsets.UTF_8);
+        byte[] digest = digest(plaintext);
+        long id = id(digest);
+        stripe(id).putIfAbsent(id, readLong(digest, 8), plaintext, encryptionEngine);
+        return TOKEN_PREFIX + Long.toHexString(id);
+    }
+
+    // O token que tokenize devolveria, sem guardar o valor (e sem que ele possa ser resolvido de volta)
+    public String tokenOf(String value) {
+        return TOKEN_PREFIX + Long.toHexString(id(digest(value.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    private static long id(byte[] digest) {
+        long id = readLong(digest, 0);
+        return id == 0 ? 1 : id;
+    }
+
+    public String detokenize(String token) {
+        if (!token.startsWith(TOKEN_PREFIX)) {
+            throw new IllegalArgumentException("Invalid token " + token);
+        }
+        long id = Long.parseUnsignedLong(token.substring(TOKEN_PREFIX.length()), 16);
+        byte[] encrypted = stripe(id).get(id);
+        if (encrypted == null) {
+            throw new IllegalArgumentException("Unknown token " + token);
+        }
+        return new String(encryptionEngine.decrypt(encrypted), StandardCharsets.UTF_8);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            size += stripe.size();
+        }
+        return size;
+    }
+
+    // Os valores ja estao cifrados na memoria, entao o snapshot em disco tambem fica cifrado
+    public void snapshot(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            for (Stripe stripe : stripes) {
+                stripe.writeTo(out);
+            }
+            out.writeLong(0);
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public void restore(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IOException("Invalid tokenization snapshot " + file);
+            }
+            for (long id = in.readLong(); id != 0; id = in.readLong()) {
+                long check = in.readLong();
+                byte[] encrypted = new byte[in.readInt()];
+                in.readFully(encrypted);
+                stripe(id).putEncrypted(id, check, encrypted);
+            }
+        }
+    }
+
+    private Stripe stripe(long id) {
+        int hash = (int) (id ^ (id >>> 32));
+        return stripes[hash & (stripes.length - 1)];
+    }
+
+    // Mesmo pool limitado do HmacKeyGenerator: um ThreadLocal criaria um Mac por chamada em virtual threads
+    private byte[] digest(byte[] plaintext) {
+        Mac mac = macs.poll();
+        if (mac == null) {
+            mac = newMac(key);
+        }
+        mac.update(plaintext);
+        byte[] digest = new byte[mac.getMacLength()];
+        try {
+            mac.doFinal(digest, 0);
+        } catch (ShortBufferException e) {
+            throw new IllegalStateException(e);
+        }
+        macs.offer(mac);
+        return digest;
+    }
+
+    private static Mac newMac(SecretKeySpec key) {
+        try {
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac;
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("Could not initialize " + ALGORITHM, e);
+        }
+    }
+
+    private static long readLong(byte[] bytes, int offset) {
+        long value = 0;
+        for (int i = 0; i < 8; i++) {
+            value = (value << 8) | (bytes[offset + i] & 0xFF);
+        }
+        return value;
+    }
+
+    // Tabela de enderecamento aberto com chaves long primitivas; id 0 marca um slot vazio
+    private static final class Stripe {
+        private final StampedLock lock = new StampedLock();
+        private final AtomicInteger entries;
+        private final int maxEntries;
+        private Table table = new Table(64);
+
+        Stripe(AtomicInteger entries, int maxEntries) {
+            this.entries = entries;
+            this.maxEntries = maxEntries;
+        }
+
+        byte[] get(long id) {
+            long stamp = lock.tryOptimisticRead();
+            byte[] value = table.get(id);
+            if (lock.validate(stamp)) {
+                return value;
+            }
+            stamp = lock.readLock();
+            try {
+                return table.get(id);
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void putIfAbsent(long id, long check, byte[] plaintext, EncryptionEngine encryptionEngine) {
+            long stamp = lock.tryOptimisticRead();
+            int slot = table.find(id);
+            long existingCheck = slot >= 0 ? table.checks[slot] : 0;
+            if (!lock.validate(stamp)) {
+                stamp = lock.readLock();
+                try {
+                    slot = table.find(id);
+                    existingCheck = slot >= 0 ? table.checks[slot] : 0;
+                } finally {
+                    lock.unlockRead(stamp);
+                }
+            }
+            if (slot >= 0) {
+                verify(id, check, existingCheck);
+                return;
+            }
+            putEncrypted(id, check, encryptionEngine.encrypt(plaintext));
+        }
+
+        void putEncrypted(long id, long check, byte[] encrypted) {
+            long stamp = lock.writeLock();
+            try {
+                int slot = table.find(id);
+                if (slot >= 0) {
+                    verify(id, check, table.checks[slot]);
+                    return;
+                }
+                if (entries.incrementAndGet() > maxEntries) {
+                    entries.decrementAndGet();
+                    throw new FullException(maxEntries);
+                }
+                if ((table.size + 1) * 4L > table.ids.length * 3L) {
+                    table = table.resize();
+                }
+                table.insert(id, check, encrypted);
+            } finally {
+                lock.unlockWrite(stamp);
+            }
+        }
+
+        int size() {
+            long stamp = lock.readLock();
+            try {
+                return table.size;
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        void writeTo(DataOutputStream out) throws IOException {
+            long stamp = lock.readLock();
+            try {
+                for (int i = 0; i < table.ids.length; i++) {
+                    if (table.ids[i] != 0) {
+                        out.writeLong(table.ids[i]);
+                        out.writeLong(table.checks[i]);
+                        out.writeInt(table.values[i].length);
+                        out.write(table.values[i]);
+                    }
+                }
+            } finally {
+                lock.unlockRead(stamp);
+            }
+        }
+
+        private static void verify(long id, long check, long existingCheck) {
+            if (existingCheck != check) {
+                throw new IllegalStateException("Token collision for id " + Long.toHexString(id));
+            }
+        }
+    }
+
+    public static final class FullException extends IllegalStateException {
+        FullException(int maxEntries) {
+            super("Tokenization vault is full (" + maxEntries + " entries)");
+        }
+    }
+
+    private static final class Table {
+        private final long[] ids;
+        private final long[] checks;
+        private final byte[][] values;
+        private int size;
+
+        Table(int capacity) {
+            this.ids = new long[capacity];
+            this.checks = new long[capacity];
+            this.values = new byte[capacity][];
+        }
+
+        int find(long id) {
+            int mask = ids.length - 1;
+            for (int i = index(id, mask), probes = 0; probes < ids.length; i = (i + 1) & mask, probes++) {
+                if (ids[i] == id) {
+                    return i;
+                }
+                if (ids[i] == 0) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        byte[] get(long id) {
+            int slot = find(id);
+            return slot >= 0 ? values[slot] : null;
+        }
+
+        void insert(long id, long check, byte[] value) {
+            int mask = ids.length - 1;
+            int i = index(id, mask);
+            while (ids[i] != 0) {
+                i = (i + 1) & mask;
+            }
+            checks[i] = check;
+            values[i] = value;
+            ids[i] = id;
+            size++;
+        }
+
+        Table resize() {
+            Table resized = new Table(ids.length << 1);
+            for (int i = 0; i < ids.length; i++) {
+                if (ids[i] != 0) {
+                    resized.insert(ids[i], checks[i], values[i]);
+                }
+            }
+            return resized;
+        }
+
+        private static int index(long id, int mask) {
+            long hash = id * 0x9E3779B97F4A7C15L;
+            return (int) (hash >>> 32) & mask;
+        }
+    }
+}
+
+//Neste exemplo, o TokenizationKeyGenerator devolvia um UUID aleatorio a cada chamada e nenhum cache indexado pelo token
+// tinha hit. O TokenizationVault gera tokens deterministicos (HMAC-SHA256 do valor), entao o TokenizationKeyGenerator
+// passa a devolver sempre a mesma chave para o mesmo parametro e o token pode ser resolvido de volta com detokenize. O
+// mapeamento token -> valor fica em tabelas de chaves long primitivas divididas em stripes, cada uma com seu
+// StampedLock (leitura otimista sem bloqueio), com os valores cifrados pelo EncryptionEngine e um limite de entradas;
+// snapshot/restore gravam e recarregam o cofre em disco.
@@ -25,6 +25,10 @@ public interface UserApi {
     @GetMapping("/users/{id}/cache")
     ResponseEntity<Object> getUserWithCache(@PathVariable long id);
 
+    // Endpoint em lote usado pelo BatchingUserClient
+    @PostMapping("/users/batch")
+    Map<Long, Object> getUsers(@RequestBody List<Long> ids);
+
     default ResponseEntity<Object> getUserFallback(long id, Throwable ex) {
         // code to handle fallback
     }
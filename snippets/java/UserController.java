@@ -3,43 +3,108 @@
 public class UserController {
 
     private final UserService userService;
+    private final SingleFlight<Long, ResponseEntity<Object>> cachedUserCalls;
+    private final KeyedRateLimiter rateLimiter;
+    private final RateLimiter globalRateLimiter;
+    // nomes completos: CircuitBreaker e Bulkhead sozinhos sao as anotacoes usadas nos endpoints
+    private final io.github.resilience4j.circuitbreaker.CircuitBreaker circuitBreaker;
+    private final io.github.resilience4j.bulkhead.Bulkhead bulkhead;
+    private final VirtualThreadTimeLimiter timeLimiter;
+    private final StaleWhileRevalidateCache<Long, Object> lastKnownUsers;
 
-    public UserController(UserService userService) {
+    public UserController(UserService userService, MeterRegistry meterRegistry, KeyedRateLimiter rateLimiter, RateLimiterRegistry rateLimiterRegistry, CircuitBreakerRegistry circuitBreakerRegistry,
+                          BulkheadRegistry bulkheadRegistry, VirtualThreadTimeLimiter timeLimiter) {
         this.userService = userService;
+        this.rateLimiter = rateLimiter;
+        // mesma instancia que a anotacao @RateLimiter(name = "userRateLimiter") usava
+        this.globalRateLimiter = rateLimiterRegistry.rateLimiter("userRateLimiter");
+        this.cachedUserCalls = new SingleFlight<>("getUserWithCache", meterRegistry);
+        // mesma instancia usada pela anotacao @CircuitBreaker(name = "userCircuitBreaker")
+        this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("userCircuitBreaker");
+        // e a do @Bulkhead(name = "userBulkhead"); o time limiter tem o mesmo timeout de 1000 ms do userTimeout
+        this.bulkhead = bulkheadRegistry.bulkhead("userBulkhead");
+        this.timeLimiter = timeLimiter;
+        this.lastKnownUsers = new StaleWhileRevalidateCache<>("userController", circuitBreaker, 100_000, Duration.ofSeconds(10), Duration.ofHours(1), meterRegistry);
     }
 
     @GetMapping("/users/{id}/cache")
     public ResponseEntity<Object> getUserWithCache(@PathVariable long id) {
-        return userService.getUserWithCache(id);
+        return cachedUserCalls.execute(id, () -> userService.getUserWithCache(id));
     }
 
     @CircuitBreaker(name = "userCircuitBreaker", fallbackMethod = "getUserFallback")
     @GetMapping("/users/{id}")
     public ResponseEntity<Object> getUser(@PathVariable long id) {
-        return userService.getUser(id);
+        return remember(id, userService.getUser(id));
     }
 
     @Bulkhead(name = "userBulkhead", fallbackMethod = "getUserFallback")
     @GetMapping("/users/{id}/bulkhead")
     public ResponseEntity<Object> getUserWithBulkhead(@PathVariable long id) {
-        return userService.getUser(id);
+        return remember(id, userService.getUser(id));
     }
 
     @Timeout(name = "userTimeout", fallbackMethod = "getUserFallback")
     @GetMapping("/users/{id}/timeout")
     public ResponseEntity<Object> getUserWithTimeout(@PathVariable long id) {
-        return userService.getUser(id);
+        return remember(id, userService.getUser(id));
     }
 
-    @RateLimiter(name = "userRateLimiter", fallbackMethod = "getUserFallback")
+    // Primeiro o bucket do chamador, depois o limite global: um chamador que ja esgotou o proprio limite recebe 429 sem
+    // gastar a vez dos outros no userRateLimiter
     @GetMapping("/users/{id}/ratelimiter")
-    public ResponseEntity<Object> getUserWithRateLimiter(@PathVariable long id) {
-        return userService.getUser(id);
+    public ResponseEntity<Object> getUserWithRateLimiter(@PathVariable long id, HttpServletRequest request) {
+        if (!rateLimiter.tryAcquire(callerOf(request))) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
+        if (!globalRateLimiter.acquirePermission()) {
+            return getUserFallback(id, RequestNotPermitted.createRequestNotPermitted(globalRateLimiter));
+        }
+        return remember(id, userService.getUser(id));
+    }
+
+    // A identidade autenticada (o Principal preenchido pela autenticacao do container ou do Spring Security) e nao um
+    // header escolhido pelo cliente, que bastaria trocar para ganhar um bucket novo; sem autenticacao, o endereco de
+    // origem
+    static String callerOf(HttpServletRequest request) {
+        Principal principal = request.getUserPrincipal();
+        return principal != null ? "user:" + principal.getName() : "addr:" + request.getRemoteAddr();
     }
 
     @Retry(name = "userRetry", fallbackMethod = "getUserFallback")
     @GetMapping("/users/{id}/retry")
     public ResponseEntity<Object> getUserWithRetry(@PathVariable long id) {
-        return userService.getUser(id);
+        return remember(id, userService.getUser(id));
+    }
+
+    // Fallback de todos os endpoints anotados: serve a ultima copia boa com Age e Warning (RFC 7234) e revalida em background
+    public ResponseEntity<Object> getUserFallback(long id, Throwable e) {
+        return lastKnownUsers.getStale(id, () -> revalidate(id))
+            .map(stale -> ResponseEntity.ok()
+                .header(HttpHeaders.AGE, String.valueOf(stale.getAge().getSeconds()))
+                .header(HttpHeaders.WARNING, "110 - \"Response is Stale\"")
+                .body(stale.getValue()))
+            .orElseGet(() -> ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build());
+    }
+
+    private ResponseEntity<Object> remember(long id, ResponseEntity<Object> response) {
+        if (response.getStatusCode().is2xxSuccessful()) {
+            lastKnownUsers.put(id, response.getBody());
+        }
+        return response;
+    }
+
+    // Mesmos limites dos endpoints: time limiter -> bulkhead -> circuit breaker, para que as revalidacoes nao passem
+    // da concorrencia do userBulkhead nem fiquem presas num servico lento. null (resposta sem sucesso) mantem a copia
+    // anterior
+    private Object revalidate(long id) {
+        ResponseEntity<Object> response;
+        try {
+            response = timeLimiter.executeSupplier(() -> bulkhead.executeSupplier(
+                () -> circuitBreaker.executeSupplier(() -> userService.getUser(id))));
+        } catch (TimeoutException e) {
+            throw new CompletionException(e);
+        }
+        return response.getStatusCode().is2xxSuccessful() ? response.getBody() : null;
     }
 }
\ No newline at end of file
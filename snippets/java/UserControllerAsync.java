@@ -4,9 +4,19 @@
 public class UserControllerAsync {
 
     private final UserService userService;
+    private final SingleFlight<Long, ResponseEntity<Object>> cachedUserCalls;
+    private final KeyedRateLimiter rateLimiter;
+    private final RateLimiter globalRateLimiter;
+    private final Executor blockingCalls;
 
-    public UserControllerAsync(UserService userService) {
+    public UserControllerAsync(UserService userService, MeterRegistry meterRegistry, KeyedRateLimiter rateLimiter,
+                               RateLimiterRegistry rateLimiterRegistry,
+                               @Qualifier("blockingCallExecutor") Executor blockingCalls) {
         this.userService = userService;
+        this.rateLimiter = rateLimiter;
+        this.globalRateLimiter = rateLimiterRegistry.rateLimiter("userRateLimiter");
+        this.blockingCalls = blockingCalls;
+        this.cachedUserCalls = new SingleFlight<>("getUserWithCacheAsync", meterRegistry);
     }
 
     @CircuitBreaker(name = "userCircuitBreaker", fallbackMethod = "getUserFallbackAsync")
@@ -27,9 +37,11 @@ public class UserControllerAsync {
         return userService.getUser(id);
     }
 
-    @RateLimiter(name = "userRateLimiter", fallbackMethod = "getUserFallbackAsync")
     @GetMapping("/users/{id}/ratelimiter")
-    public ResponseEntity<Object> getUserWithRateLimiter(@PathVariable long id) {
+    public ResponseEntity<Object> getUserWithRateLimiter(@PathVariable long id, HttpServletRequest request) {
+        if (!rateLimiter.tryAcquire(UserController.callerOf(request)) || !globalRateLimiter.acquirePermission()) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS).build();
+        }
         return userService.getUser(id);
     }
 
@@ -40,8 +52,8 @@ public class UserControllerAsync {
     }
 
     @GetMapping("/users/{id}/cache")
-    public ResponseEntity<Object> getUserWithCache(@PathVariable long id) {
-        return userService.getUserWithCache(id);
+    public CompletableFuture<ResponseEntity<Object>> getUserWithCache(@PathVariable long id) {
+        return cachedUserCalls.executeAsync(id, () -> CompletableFuture.supplyAsync(() -> userService.getUserWithCache(id), blockingCalls));
     }
 
     @Async
@@ -1,8 +1,10 @@
-import io.github.resilience4j.bulkhead.annotation.Bulkhead;
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
 import io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker;
 import io.github.resilience4j.ratelimiter.annotation.RateLimiter;
 import io.github.resilience4j.retry.annotation.Retry;
 import io.github.resilience4j.timelimiter.annotation.TimeLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
@@ -16,18 +18,29 @@ public class UserServiceObservability {
     private static final Logger LOGGER = LoggerFactory.getLogger(UserServiceObservability.class);
 
     private final RestTemplate restTemplate;
+    private final Hedger hedger;
+    private final Bulkhead bulkhead;
+    private final ResilienceEventBus eventBus;
+    private final MeterRegistry meterRegistry;
+    private ResiliencePolicyEngine policyEngine;
 
-    public UserServiceObservability(RestTemplate restTemplate) {
+    public UserServiceObservability(RestTemplate restTemplate, Hedger.Registry hedgers, BulkheadRegistry bulkheadRegistry, ResilienceEventBus eventBus, MeterRegistry meterRegistry) {
         this.restTemplate = restTemplate;
+        this.hedger = hedgers.hedger("userServiceObservability.getUser");
+        // mesma instancia que a anotacao @Bulkhead(name = "bulkhead") usava
+        this.bulkhead = bulkheadRegistry.bulkhead("bulkhead");
+        this.eventBus = eventBus;
+        this.meterRegistry = meterRegistry;
     }
 
     @Retry(name = "retry")
     @CircuitBreaker(name = "circuitBreaker")
     @RateLimiter(name = "rateLimiter")
-    @Bulkhead(name = "bulkhead")
     @TimeLimiter(name = "timeLimiter")
     public String getUser() {
-        return restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/1", String.class);
+        // o bulkhead fica dentro do hedger: com a anotacao @Bulkhead por fora, uma vaga valia duas chamadas remotas
+        return hedger.executeSupplier(() -> bulkhead.executeSupplier(
+            () -> restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/1", String.class)));
     }
 
     public String getUserFallback() {
@@ -37,28 +50,18 @@ public class UserServiceObservability {
 
     // Gatilhos para os padrões de resiliencia utilizando métricas do OpenTelemetry
     public void setupResilienceTriggers() {
-        // Latencia
-        LatencyTrigger latencyTrigger = LatencyTrigger.of(Duration.ofMillis(500));
-        circuitBreaker.getEventPublisher()
-                .onCallNotPermitted(event -> {
-                    if (event.getCircuitBreaker().getMetrics().getNumberOfBufferedCalls() > 0) {
-                        latencyTrigger.recordSuccess();
-                    } else {
-                        latencyTrigger.recordError();
-                    }
-                })
-                .onSuccess(event -> latencyTrigger.recordSuccess())
-                .onError(event -> latencyTrigger.recordError());
-        circuitBreaker.getEventPublisher().onStateTransition(event -> {
-            if (event.getStateTransition().getFrom() == CircuitBreaker.State.FORCED_OPEN && event.getStateTransition().getTo() == CircuitBreaker.State.HALF_OPEN) {
-                latencyTrigger.reset();
-            }
-        });
-        circuitBreaker.getEventPublisher().onStateTransition(event -> {
-            if (event.getStateTransition().getFrom() == CircuitBreaker.State.HALF_OPEN && event.getStateTransition().getTo() == CircuitBreaker.State.CLOSED) {
-                latencyTrigger.reset();
+        // Latencia: as duracoes chegam pelo event bus e o p99 do ultimo minuto e comparado com 500 ms a cada segundo
+        LatencyHistogram latencies = new LatencyHistogram("userService", Duration.ofMinutes(1), 6);
+        latencies.bindTo(meterRegistry);
+        eventBus.attach(circuitBreaker).subscribe((event, endOfBatch) -> {
+            if (event.getSource().equals(circuitBreaker.getName())
+                && (event.getType() == ResilienceEventBus.Type.SUCCESS || event.getType() == ResilienceEventBus.Type.ERROR)) {
+                latencies.record(event.getDurationNanos(), event.getTimestampNanos());
             }
         });
+        policyEngine = new ResiliencePolicyEngine("userService", Duration.ofSeconds(1), meterRegistry)
+            .register("latency-opens-breaker", ResiliencePolicyEngine.latencyOpensBreaker(latencies, 0.99, Duration.ofMillis(500), 100, circuitBreaker))
+            .start();
 
         SemaphoreTrigger semaphoreTrigger = SemaphoreTrigger.ofDefaults("userService");
         semaphoreTrigger.register(bulkhead.getEventPublisher());
@@ -1,19 +1,21 @@
 @Service
 public class UserService {
     private final RestTemplate restTemplate;
-    private final Semaphore semaphore;
+    private final Bulkhead bulkhead;
     private final TimeLimiter timeLimiter;
     private final CircuitBreaker circuitBreaker;
     private final Tracer tracer;
     private final MeterRegistry meterRegistry;
+    private final ResilienceMetricsBinder metricsBinder;
 
-    public UserService(RestTemplate restTemplate, Semaphore semaphore, TimeLimiter timeLimiter, CircuitBreaker circuitBreaker, Tracer tracer, MeterRegistry meterRegistry) {
+    public UserService(RestTemplate restTemplate, @Qualifier("adaptiveBulkhead") Bulkhead bulkhead, TimeLimiter timeLimiter, CircuitBreaker circuitBreaker, Tracer tracer, MeterRegistry meterRegistry, ResilienceMetricsBinder metricsBinder) {
         this.restTemplate = restTemplate;
-        this.semaphore = semaphore;
+        this.bulkhead = bulkhead;
         this.timeLimiter = timeLimiter;
         this.circuitBreaker = circuitBreaker;
         this.tracer = tracer;
         this.meterRegistry = meterRegistry;
+        this.metricsBinder = metricsBinder;
     }
 
 @CircuitBreaker(name = "userService", fallbackMethod = "getUserFallback")
@@ -22,10 +24,11 @@ public class UserService {
 public String getUser(String userId) {
         final Span span = tracer.nextSpan().name("getUser").start();
         try (final Scope scope = tracer.withSpan(span)) {
-            return timeLimiter.executeSupplier(() -> semaphore.executeSupplier(() -> circuitBreaker.executeSupplier(() -> {
+            return timeLimiter.executeSupplier(() -> bulkhead.executeSupplier(() -> circuitBreaker.executeSupplier(() -> {
                 try {
+                    // o corpo da resposta nao vai para o span: so o tamanho
                     final String response = restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/" + userId, String.class);
-                    span.setAttribute("response", response);
+                    span.setAttribute("response.length", response == null ? 0 : response.length());
                     return response;
                 } catch (HttpClientErrorException e) {
                     if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
@@ -52,27 +55,12 @@ public String getUserFallback(String userId, TooManyRequestsException e) {
 
 @PostConstruct
 public void setupResilienceTriggers() {
-        final Clock clock = Clock.SYSTEM;
-        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+        // Sleuth e gatilhos usam o MeterRegistry da aplicacao; as metricas do Resilience4j vem do binder compartilhado
         final SleuthTracer tracer = new SleuthTracer(meterRegistry);
         final SleuthMeterEvents sleuthMeterEvents = new SleuthMeterEvents(tracer);
-
-        final TimeLimiterConfig timeLimiterConfig = TimeLimiterConfig.custom()
-            .timeoutDuration(Duration.ofMillis(1000))
-            .cancelRunningFuture(true)
-            .build();
-        final TimeLimiterRegistry timeLimiterRegistry = TimeLimiterRegistry.of(timeLimiterConfig);
-        final TimeLimiterMetrics timeLimiterMetrics = new TimeLimiterMetrics(timeLimiterRegistry, meterRegistry, clock);
-
-        final SemaphoreConfig semaphoreConfig = SemaphoreConfig.custom()
-                .maxConcurrentCalls(10)
-                .build();
-        final SemaphoreRegistry semaphoreRegistry = SemaphoreRegistry.of(semaphoreConfig);
-        final SemaphoreMetrics semaphoreMetrics = new SemaphoreMetrics(semaphoreRegistry, meterRegistry, clock);
-
-        final CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.ofDefaults();
-        final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-        final CircuitBreakerMetrics circuitBreakerMetrics = new CircuitBreakerMetrics(circuitBreakerRegistry, meterRegistry, clock);
+        metricsBinder.bind(timeLimiter)
+            .bind(bulkhead)
+            .bind(circuitBreaker);
 
         // Criação do gatilho de latência utilizando OpenTelemetry
         LatencyTrigger latencyTrigger = LatencyTrigger.of(Duration.ofMillis(500));
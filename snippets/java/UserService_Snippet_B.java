@@ -3,19 +3,19 @@ public class UserService {
     private final CircuitBreaker circuitBreaker;
     private final Bulkhead bulkhead;
     private final TimeLimiter timeLimiter;
-    private final RabbitTemplate rabbitTemplate;
+    private final AsyncFallbackPublisher fallbackPublisher;
 
     @Autowired
-    public UserService(CircuitBreaker circuitBreaker, Bulkhead bulkhead, TimeLimiter timeLimiter, RabbitTemplate rabbitTemplate) {
+    public UserService(CircuitBreaker circuitBreaker, Bulkhead bulkhead, TimeLimiter timeLimiter, AsyncFallbackPublisher fallbackPublisher) {
         this.circuitBreaker = circuitBreaker;
         this.bulkhead = bulkhead;
         this.timeLimiter = timeLimiter;
-        this.rabbitTemplate = rabbitTemplate;
+        this.fallbackPublisher = fallbackPublisher;
     }
 
     @CircuitBreaker(name = "userServiceCircuitBreaker", fallbackMethod = "getUserFallback")
-    public String getUser(String id) {
-        return timeLimiter.executeCheckedSupplier(() -> getUserBlocking(id), UserNotFoundException.class);
+    public CompletableFuture<String> getUser(String id) {
+        return CompletableFuture.completedFuture(timeLimiter.executeCheckedSupplier(() -> getUserBlocking(id), UserNotFoundException.class));
     }
 
     @Bulkhead(name = "userServiceBulkhead")
@@ -32,11 +32,7 @@ public class UserService {
         return "Usuário " + id;
     }
 
-    public String getUserFallback(String id, Throwable throwable) {
-        // Inicia a transação de compensação para buscar o usuário na fila AMQ
-        return rabbitTemplate.convertSendAndReceive("userQueue", id, m -> {
-            m.getMessageProperties().setHeader("Fallback", "true");
-            return m;
-        });
+    public CompletableFuture<String> getUserFallback(String id, Throwable throwable) {
+        return fallbackPublisher.request("userQueue", id, Map.of("Fallback", "true"), null);
     }
 }
@@ -6,20 +6,31 @@ public class UserService {
     private final CircuitBreaker circuitBreaker;
     private final Bulkhead bulkhead;
     private final OpentelemetryTracer tracer;
+    private final ResilienceEventBus eventBus;
+    private final LatencyHistogram latencies;
+    private final ResiliencePolicyEngine policyEngine;
+    private final DecoratorPipeline<String, String> userPipeline;
 
-    public UserService(UserClient userClient, CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry, TracerProvider tracerProvider) {
+    public UserService(UserClient userClient, CircuitBreakerRegistry circuitBreakerRegistry, BulkheadRegistry bulkheadRegistry, TracerProvider tracerProvider, ResilienceEventBus eventBus, MeterRegistry meterRegistry) {
         this.userClient = userClient;
         this.circuitBreaker = circuitBreakerRegistry.circuitBreaker("userServiceCB");
         this.bulkhead = bulkheadRegistry.bulkhead("userServiceBH");
         this.tracer = tracerProvider.get("user-service");
+        this.eventBus = eventBus;
+        this.latencies = new LatencyHistogram("userService", Duration.ofMinutes(1), 6);
+        this.latencies.bindTo(meterRegistry);
+        this.policyEngine = new ResiliencePolicyEngine("userService", Duration.ofSeconds(1), meterRegistry);
+        this.userPipeline = DecoratorPipeline.<String, String>builder()
+            .with(DecoratorPipeline.circuitBreaker(circuitBreaker))
+            .with(DecoratorPipeline.bulkhead(bulkhead))
+            .with(DecoratorPipeline.latency(latencies))
+            .build(userClient::getUser);
     }
 
     @CircuitBreaker(name = "userServiceCB")
     @Bulkhead(name = "userServiceBH")
     public String getUser(String id) {
-        return CircuitBreaker.decorateSupplier(circuitBreaker,
-                Bulkhead.decorateSupplier(bulkhead,
-                        () -> userClient.getUser(id))).get();
+        return userPipeline.apply(id);
     }
 
     public String getUserFallback(String id) {
@@ -27,34 +38,25 @@ public class UserService {
     }
 
     public void setupResilienceTriggers() {
-        // Latency trigger for circuit breaker
-        LatencyTrigger latencyTrigger = LatencyTrigger.of(Duration.ofMillis(500));
-        circuitBreaker.getEventPublisher()
-                .onCallNotPermitted(event -> {
-                    if (event.getCircuitBreaker().getMetrics().getNumberOfBufferedCalls() > 0) {
-                        latencyTrigger.recordSuccess();
-                    } else {
-                        latencyTrigger.recordError();
-                    }
-                })
-                .onSuccess(event -> latencyTrigger.recordSuccess())
-                .onError(event -> latencyTrigger.recordError());
-        circuitBreaker.getEventPublisher().onStateTransition(event -> {
-            if (event.getStateTransition().getFrom() == CircuitBreaker.State.FORCED_OPEN && event.getStateTransition().getTo() == CircuitBreaker.State.HALF_OPEN) {
-                latencyTrigger.reset();
-            }
-        });
-        circuitBreaker.getEventPublisher().onStateTransition(event -> {
-            if (event.getStateTransition().getFrom() == CircuitBreaker.State.HALF_OPEN && event.getStateTransition().getTo() == CircuitBreaker.State.CLOSED) {
-                latencyTrigger.reset();
-            }
-        });
+        // Latency percentiles over the last minute: p99 above 500 ms opens the breaker, p999 above 500 ms halves the bulkhead
+        policyEngine
+            .register("latency-opens-breaker", ResiliencePolicyEngine.latencyOpensBreaker(latencies, 0.99, Duration.ofMillis(500), 100, circuitBreaker))
+            .register("latency-shrinks-bulkhead", ResiliencePolicyEngine.latencyShrinksBulkhead(latencies, 0.999, Duration.ofMillis(500), 1000, bulkhead, 2))
+            .start();
 
         // Semaphore trigger for bulkhead
         SemaphoreTrigger semaphoreTrigger = SemaphoreTrigger.of(10);
-        bulkhead.getEventPublisher().onCallNotPermitted(event -> semaphoreTrigger.recordError()).onSuccess(event -> semaphoreTrigger.recordSuccess());
-        // Register triggers with circuit breaker and bulkhead
-        circuitBreaker.configure(config -> config.addTrigger(latencyTrigger));
+        eventBus.attach(bulkhead).subscribe((event, endOfBatch) -> {
+            if (!event.getSource().equals(bulkhead.getName())) {
+                return;
+            }
+            if (event.getType() == ResilienceEventBus.Type.CALL_NOT_PERMITTED) {
+                semaphoreTrigger.recordError();
+            } else if (event.getType() == ResilienceEventBus.Type.CALL_FINISHED) {
+                semaphoreTrigger.recordSuccess();
+            }
+        });
+        // Register triggers with bulkhead
         bulkhead.configure(config -> config.addTrigger(semaphoreTrigger));
     }
 }
\ No newline at end of file
@@ -22,18 +22,43 @@ import io.opentelemetry.trace.Tracer;
 import org.springframework.amqp.rabbit.core.RabbitTemplate;
 import org.springframework.beans.factory.annotation.Autowired;
 
+import jakarta.annotation.PostConstruct;
+import java.nio.ByteBuffer;
+
 @Service
 public class UserService {
  private static final Tracer tracer = OpenTelemetry.getTracerProvider().get("UserService");
+ // Dono das compensacoes deste servico no log compartilhado; os registros de outros servicos tem outro formato
+ private static final String COMPENSATION_OWNER = "userService.compensations";
+ private static final byte COMPENSATE_GET_USER = 1;
+ private static final byte FALLBACK_GET_USER = 2;
  private final RabbitTemplate rabbitTemplate;
  private final UserRepository userRepository;
  private final CircuitBreaker circuitBreaker;
+ private final CompensationLog compensationLog;
 
 @Autowired
-public UserService(RabbitTemplate rabbitTemplate, UserRepository userRepository, CircuitBreaker circuitBreaker) {
+public UserService(RabbitTemplate rabbitTemplate, UserRepository userRepository, CircuitBreaker circuitBreaker, CompensationLog compensationLog) {
   this.rabbitTemplate = rabbitTemplate;
   this.userRepository = userRepository;
   this.circuitBreaker = circuitBreaker;
+  this.compensationLog = compensationLog;
+ }
+
+ // Refaz as compensacoes que estavam pendentes quando a aplicacao parou
+ @PostConstruct
+public void replayPendingCompensations() {
+  compensationLog.replay(COMPENSATION_OWNER, (txId, record) -> {
+   ByteBuffer buffer = ByteBuffer.wrap(record);
+   byte operation = buffer.get();
+   long id = buffer.getLong();
+   if (operation == COMPENSATE_GET_USER) {
+    userRepository.deleteById(id);
+   } else {
+    rabbitTemplate.convertAndSend("userQueue", id);
+   }
+   compensationLog.complete(txId);
+  });
  }
 
  @Transactional
@@ -48,18 +73,28 @@ public String getUser(long id) {
   });
  }
 
- @Transactional
 public void compensateGetUser(long id) {
+  // a intencao vai para o log (em disco) antes do efeito, e e marcada como concluida depois
+  long txId = compensationLog.begin(COMPENSATION_OWNER, record(COMPENSATE_GET_USER, id));
   //logic to compensate the getUser method
   userRepository.deleteById(id);
+  compensationLog.complete(txId);
  }
 
- @Transactional
 public void fallbackGetUser(long id) {
+  long txId = compensationLog.begin(COMPENSATION_OWNER, record(FALLBACK_GET_USER, id));
   rabbitTemplate.convertAndSend("userQueue", id);
+  compensationLog.complete(txId);
+ }
+
+ // 9 bytes: operacao + id
+private static byte[] record(byte operation, long id) {
+  return ByteBuffer.allocate(9).put(operation).putLong(id).array();
  }
 }
 
  //circuitBreaker.executeSupplier() é usado para executar o método 'getUser' dentro do Circuit Breaker e ele irá automaticamente lidar com os métodos de fallback e compensação se o circuito estiver aberto.
 //Além disso, o uso de 'circuitBreaker' em vez de criar novas instâncias de CircuitBreaker no método 'setupResilienceTriggers' e
-//o uso da anotação 'Autowired' para a injeção do construtor em vez da injeção manual para os objetos.
\ No newline at end of file
+//o uso da anotação 'Autowired' para a injeção do construtor em vez da injeção manual para os objetos.
+//As compensacoes nao usam mais @Transactional (JTA): antes de cada efeito a intencao e gravada no CompensationLog, e o
+// replay no startup refaz as que ficaram pendentes, entao as operacoes de compensacao precisam ser idempotentes.
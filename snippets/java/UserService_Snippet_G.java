@@ -3,33 +3,38 @@ public class UserService {
 
     private final CircuitBreaker circuitBreaker;
     private final Bulkhead bulkhead;
-    private final TimeLimiter timeLimiter;
-    private final MetricRegistry metricRegistry;
+    private final VirtualThreadTimeLimiter timeLimiter;
+    private final ResilienceMetricsBinder metricsBinder;
     private final Tracer tracer;
-    private final RabbitTemplate rabbitTemplate;
+    private final AsyncFallbackPublisher fallbackPublisher;
 
 @Autowired
-public UserService(CircuitBreaker circuitBreaker, Bulkhead bulkhead, TimeLimiter timeLimiter, MetricRegistry metricRegistry, Tracer tracer, RabbitTemplate rabbitTemplate) {
+public UserService(CircuitBreaker circuitBreaker, Bulkhead bulkhead, VirtualThreadTimeLimiter timeLimiter, ResilienceMetricsBinder metricsBinder, Tracer tracer, AsyncFallbackPublisher fallbackPublisher) {
     this.circuitBreaker = circuitBreaker;
     this.bulkhead = bulkhead;
     this.timeLimiter = timeLimiter;
-    this.metricRegistry = metricRegistry;
+    this.metricsBinder = metricsBinder;
     this.tracer = tracer;
-    this.rabbitTemplate = rabbitTemplate;
+    this.fallbackPublisher = fallbackPublisher;
 }
 
 public void setupResilienceTriggers() {
-    metricRegistry.registerAll(CircuitBreakerMetrics.ofCircuitBreaker(circuitBreaker));
-    metricRegistry.registerAll(BulkheadMetrics.ofBulkhead(bulkhead));
-    metricRegistry.registerAll(TimeLimiterMetrics.ofTimeLimiter(timeLimiter));
+    // bind e idempotente: chamar setupResilienceTriggers de novo nao duplica os meters
+    metricsBinder.bind(circuitBreaker)
+        .bind(bulkhead)
+        .bind(timeLimiter);
 }
 
-public String getUser(String id) {
-    try {
-        return timeLimiter.executeCheckedSupplier(() -> getUserBlocking(id), UserNotFoundException.class);
-    } catch (UserNotFoundException e) {
-        return getUserFallback(id);
-    }
+public CompletableFuture<String> getUser(String id) {
+    // timeout e usuario nao encontrado caem no fallback sem que a thread de quem chama espere pela chamada remota
+    return timeLimiter.executeAsync(() -> getUserBlocking(id))
+        .exceptionallyCompose(error -> {
+            Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof UserNotFoundException || cause instanceof TimeoutException) {
+                return getUserFallback(id);
+            }
+            return CompletableFuture.failedFuture(cause);
+        });
 }
 
 public String getUserBlocking(String id) {
@@ -49,19 +54,25 @@ public String getUserFromRemoteService(String id) {
             throw new RuntimeException("Erro ao buscar usuário");
         }
         return "Usuário " + id;
+    } catch (RuntimeException e) {
+        // status de erro: o AdaptiveSamplingSpanProcessor exporta o trace mesmo que ele nao tenha sido amostrado
+        span.recordException(e);
+        span.setStatus(StatusCode.ERROR);
+        throw e;
     } finally {
         span.end();
     }
 }
 
-public String getUserFallback(String id) {
-    // Adicionar o OpenTelemetry para rastrear a chamada à fila AMQ
+public CompletableFuture<String> getUserFallback(String id) {
+    // Adicionar o OpenTelemetry para rastrear a chamada à fila AMQ; o span termina quando a resposta chega
     Span span = tracer.spanBuilder("getUserFallback").startSpan();
-    try {
-        // Inicia a transação de compensação para buscar o usuário na fila AMQ
-        return rabbitTemplate.convertSendAndReceive("userQueue", id);
-    } finally {
+    return fallbackPublisher.request("userQueue", id).whenComplete((user, error) -> {
+        if (error != null) {
+            span.recordException(error);
+            span.setStatus(StatusCode.ERROR);
+        }
         span.end();
-    }
+    });
 }
 }
\ No newline at end of file
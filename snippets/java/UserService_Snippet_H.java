@@ -2,64 +2,56 @@
 public class UserService {
 
     private final RestTemplate restTemplate;
-    private final Semaphore semaphore;
+    private final Bulkhead bulkhead;
     private final TimeLimiter timeLimiter;
     private final CircuitBreaker circuitBreaker;
+    private final Hedger hedger;
+    private final StaleWhileRevalidateCache<String, String> lastKnownUsers;
+    private final DecoratorPipeline<String, String> userPipeline;
+    private final ResilienceMetricsBinder metricsBinder;
 
-    public UserService(RestTemplate restTemplate, Semaphore semaphore, TimeLimiter timeLimiter, CircuitBreaker circuitBreaker) {
+    public UserService(RestTemplate restTemplate, @Qualifier("adaptiveBulkhead") Bulkhead bulkhead, TimeLimiter timeLimiter, CircuitBreaker circuitBreaker, Hedger.Registry hedgers, MeterRegistry meterRegistry, ResilienceMetricsBinder metricsBinder) {
         this.restTemplate = restTemplate;
-        this.semaphore = semaphore;
+        this.bulkhead = bulkhead;
         this.timeLimiter = timeLimiter;
         this.circuitBreaker = circuitBreaker;
+        this.hedger = hedgers.hedger("userService.fetchUser");
+        this.metricsBinder = metricsBinder;
+        this.lastKnownUsers = new StaleWhileRevalidateCache<>("userService", circuitBreaker, 100_000, Duration.ofSeconds(10), Duration.ofHours(1), meterRegistry);
+        this.userPipeline = DecoratorPipeline.<String, String>builder()
+            .with(DecoratorPipeline.circuitBreaker(circuitBreaker))
+            .with(DecoratorPipeline.hedger(hedger))
+            .with(DecoratorPipeline.bulkhead(bulkhead))
+            .build(this::fetchUser);
     }
 
     public String getUser(String userId) {
-        return timeLimiter.executeSupplier(() -> semaphore.executeSupplier(() -> circuitBreaker.executeSupplier(() -> {
-            try {
-                return restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/" + userId, String.class);
-            } catch (HttpClientErrorException e) {
-                if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
-                    throw new TooManyRequestsException();
-                } else {
-                    throw e;
-                }
+        return lastKnownUsers.put(userId, timeLimiter.executeSupplier(() -> userPipeline.apply(userId)));
+    }
+
+    private String fetchUser(String userId) {
+        try {
+            return restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/" + userId, String.class);
+        } catch (HttpClientErrorException e) {
+            if (e.getStatusCode() == HttpStatus.TOO_MANY_REQUESTS) {
+                throw new TooManyRequestsException();
+            } else {
+                throw e;
             }
-        })));
+        }
     }
 
+    // A ultima copia boa do usuario, se houver, e melhor que uma resposta fixa
     public String getUserFallback(String userId, TooManyRequestsException e) {
-        return "Too many requests";
+        return lastKnownUsers.getStale(userId, () -> getUser(userId))
+            .map(StaleWhileRevalidateCache.Stale::getValue)
+            .orElse("Too many requests");
     }
 
     public void setupResilienceTriggers() {
-        final MeterRegistry meterRegistry = new SimpleMeterRegistry();
-        final SleuthTracer tracer = new SleuthTracer(meterRegistry);
-        final SleuthMeterEvents sleuthMeterEvents = new SleuthMeterEvents(tracer);
-
-        final Clock clock = Clock.SYSTEM;
-        final TimeLimiterConfig config = TimeLimiterConfig.custom()
-                .timeoutDuration(Duration.ofMillis(1000))
-                .cancelRunningFuture(true)
-                .build();
-        final TimeLimiterRegistry timeLimiterRegistry = TimeLimiterRegistry.of(config);
-        final TimeLimiterMetrics timeLimiterMetrics = new TimeLimiterMetrics(timeLimiterRegistry, meterRegistry, clock);
-
-        final SemaphoreConfig semaphoreConfig = SemaphoreConfig.custom()
-                .maxConcurrentCalls(10)
-                .build();
-        Registry semaphoreRegistry = SemaphoreRegistry.of(semaphoreConfig);
-        final SemaphoreMetrics semaphoreMetrics = new SemaphoreMetrics(semaphoreRegistry, meterRegistry, clock);
-        final CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
-            .failureRateThreshold(50)
-            .ringBufferSizeInHalfOpenState(2)
-            .ringBufferSizeInClosedState(2)
-            .waitDurationInOpenState(Duration.ofMillis(1000))
-            .build();
-        final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-        final CircuitBreakerMetrics circuitBreakerMetrics = new CircuitBreakerMetrics(circuitBreakerRegistry, meterRegistry, clock);
-
-        sleuthMeterEvents.bindTo(timeLimiterMetrics);
-        sleuthMeterEvents.bindTo(semaphoreMetrics);
-        sleuthMeterEvents.bindTo(circuitBreakerMetrics);
+        // Mede as instancias que o pipeline de fato usa, e nao copias criadas so para registrar metricas
+        metricsBinder.bind(timeLimiter)
+            .bind(bulkhead)
+            .bind(circuitBreaker);
     }
 }
\ No newline at end of file
@@ -2,25 +2,30 @@ public class UsuarioService {
     private final TimeLimiter timeLimiter;
     private final Bulkhead bulkhead;
     private final CircuitBreaker circuitBreaker;
-    private final RabbitTemplate rabbitTemplate;
+    private final AsyncFallbackPublisher fallbackPublisher;
+    private final Executor blockingCalls;
 
 @Autowired
-public UserService(TimeLimiter timeLimiter, Bulkhead bulkhead, CircuitBreaker circuitBreaker, RabbitTemplate rabbitTemplate) {
+public UserService(TimeLimiter timeLimiter, Bulkhead bulkhead, CircuitBreaker circuitBreaker, AsyncFallbackPublisher fallbackPublisher, @Qualifier("blockingCallExecutor") Executor blockingCalls) {
         this.timeLimiter = timeLimiter;
         this.bulkhead = bulkhead;
         this.circuitBreaker = circuitBreaker;
-        this.rabbitTemplate = rabbitTemplate;
+        this.fallbackPublisher = fallbackPublisher;
+        this.blockingCalls = blockingCalls;
     }
 @Compensable(fallbackMethod = "getUserFallback")
 @TimeLimiter(name = "userServiceTimeLimiter")
 @Bulkhead(name = "userServiceBulkhead")
 @CircuitBreaker(name = "userServiceCircuitBreaker")
-public String getUser(String id) {
-        try {
-            return getUserFromRemoteService(id);
-        } catch (RuntimeException e) {
-            throw new UserNotFoundException("Erro ao buscar usuário", e);
-        }
+public CompletableFuture<String> getUser(String id) {
+        // chamada bloqueante fora do ForkJoinPool.commonPool
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return getUserFromRemoteService(id);
+            } catch (RuntimeException e) {
+                throw new UserNotFoundException("Erro ao buscar usuário", e);
+            }
+        }, blockingCalls);
     }
 
     public String getUserFromRemoteService(String id) {
@@ -31,12 +36,12 @@ public String getUser(String id) {
     return "Usuário " + id;
     }
 
-    public String getUserFallback(String id, UserNotFoundException e) {
-        // Inicia a transação de compensação para buscar o usuário na fila AMQ
-    String user = (String) rabbitTemplate.convertSendAndReceive("userQueue", id);
-    if (user == null) {
-        throw e;
-    }
-    return user;
+    public CompletableFuture<String> getUserFallback(String id, UserNotFoundException e) {
+    return fallbackPublisher.request("userQueue", id).thenApply(user -> {
+        if (user == null) {
+            throw e;
+        }
+        return user;
+    });
     }
 }
\ No newline at end of file
@@ -0,0 +1,109 @@
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Requer Java 21 (virtual threads)
+public class VirtualThreadTimeLimiter implements AutoCloseable {
+    private final String name;
+    private final Duration timeout;
+    private final ExecutorService executor;
+
+    private final LongAdder successful = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+
+    public VirtualThreadTimeLimiter(String name, Duration timeout) {
+        this.name = name;
+        this.timeout = timeout;
+        ThreadFactory factory = Thread.ofVirtual().name(name + "-", 0).factory();
+        this.executor = Executors.newThreadPerTaskExecutor(factory);
+    }
+
+    // Cada chamada roda em uma virtual thread; ao estourar o timeout ela e interrompida, o que tambem
+    // interrompe um I/O bloqueante em andamento, e a carrier thread fica livre para outras chamadas
+    public <T> T executeSupplier(Supplier<T> supplier) throws TimeoutException {
+        Future<T> future = executor.submit(supplier::get);
+        try {
+            T result = future.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+            successful.increment();
+            return result;
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            timedOut.increment();
+            throw e;
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for the call", e);
+        } catch (ExecutionException e) {
+            failed.increment();
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    // Versao sem bloqueio para metodos que devolvem CompletableFuture: quem chama nao espera o resultado. No timeout o
+    // futuro falha com TimeoutException e a virtual thread e interrompida como em executeSupplier; os estagios
+    // encadeados pelo chamador rodam no executor, e nao na thread do temporizador do CompletableFuture
+    public <T> CompletableFuture<T> executeAsync(Supplier<T> supplier) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Future<?> task = executor.submit(() -> {
+            try {
+                result.complete(supplier.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        });
+        return result.orTimeout(timeout.toNanos(), TimeUnit.NANOSECONDS).whenCompleteAsync((value, error) -> {
+            if (error instanceof TimeoutException) {
+                task.cancel(true);
+                timedOut.increment();
+            } else if (error != null) {
+                failed.increment();
+            } else {
+                successful.increment();
+            }
+        }, executor);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getNumberOfSuccessfulCalls() {
+        return successful.sum();
+    }
+
+    public long getNumberOfFailedCalls() {
+        return failed.sum();
+    }
+
+    public long getNumberOfTimeouts() {
+        return timedOut.sum();
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+}
+
+//Neste exemplo, a cadeia bulkhead -> circuit breaker roda em virtual threads, entao uma chamada remota lenta nao
+// prende mais uma thread de plataforma. O Bulkhead do Resilience4j usado aqui e o de semaforo
+// (java.util.concurrent.Semaphore), que estaciona a virtual thread sem fixa-la (pinning) na carrier thread, ao contrario
+// de um bloqueio dentro de synchronized. Os servicos que devolvem CompletableFuture usam executeAsync e nao prendem a
+// thread de quem chama enquanto esperam.
@@ -0,0 +1,67 @@
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+// Fallbacks contra o InMemoryFallbackBroker: uma requisicao por vez esperando a resposta (como o convertSendAndReceive
+// fazia) e PIPELINE requisicoes em andamento por thread, com lotes de 1 (uma publicacao por requisicao) e de ate 100.
+// O broker responde na hora, entao o resultado e o custo do publisher e do pipelining.
+// Executar com: java -jar benchmarks.jar AsyncFallbackPublisherBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(8)
+public class AsyncFallbackPublisherBenchmark {
+    private static final int PIPELINE = 64;
+
+    @Param({"1", "100"})
+    public int maxBatchSize;
+
+    private InMemoryFallbackBroker broker;
+    private AsyncFallbackPublisher publisher;
+
+    @Setup
+    public void setup() throws Exception {
+        broker = new InMemoryFallbackBroker(4).respondTo("userQueue", id -> "Usuario " + id);
+        publisher = new AsyncFallbackPublisher(broker, 100_000, maxBatchSize, Duration.ofSeconds(5),
+            new SimpleMeterRegistry());
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        publisher.close();
+    }
+
+    @Benchmark
+    public String requestReply() {
+        return publisher.request("userQueue", "42").join();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE)
+    public Object pipelined() {
+        CompletableFuture<?>[] replies = new CompletableFuture<?>[PIPELINE];
+        for (int i = 0; i < PIPELINE; i++) {
+            replies[i] = publisher.request("userQueue", Integer.toString(i));
+        }
+        return CompletableFuture.allOf(replies).join();
+    }
+}
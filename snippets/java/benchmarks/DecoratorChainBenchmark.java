@@ -0,0 +1,262 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadRegistry;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.github.resilience4j.circuitbreaker.CircuitBreakerRegistry;
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterRegistry;
+import io.github.resilience4j.retry.Retry;
+import io.github.resilience4j.retry.RetryRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.autoconfigure.EnableAutoConfiguration;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Import;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+// Custo de cada decorador sozinho e da cadeia completa, na forma programatica (como em Svc.getUserBlocking) e na forma
+// de anotacoes com proxy AOP (como em UserController/UserServiceObservability). A chamada remota e simulada e nao faz
+// I/O, entao o resultado e so o overhead dos decoradores.
+// Executar com Java 21: java -jar benchmarks.jar DecoratorChainBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DecoratorChainBenchmark {
+    private static final RuntimeException FAILURE = new BenchmarkFailure();
+
+    // success: a chamada responde; failure: a chamada lanca excecao; open: o circuit breaker esta aberto
+    @Param({"success", "failure", "open"})
+    public String path;
+
+    private ConfigurableApplicationContext context;
+    private AnnotatedUserClient annotated;
+    private ExecutorService executor;
+    private Supplier<String> remoteCall;
+
+    private CircuitBreaker circuitBreaker;
+    private Bulkhead bulkhead;
+    private Retry retry;
+    private RateLimiter rateLimiter;
+    private VirtualThreadTimeLimiter timeLimiter;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        context = new SpringApplicationBuilder(BenchmarkConfiguration.class)
+            .web(WebApplicationType.NONE)
+            .properties(
+                // o minimum-number-of-calls fica limitado ao tamanho da janela, entao so ignorar a falha simulada impede
+                // o circuito de abrir no caminho de falha; a chamada ignorada ainda passa pelo breaker e libera a permissao
+                "resilience4j.circuitbreaker.instances.benchmark.sliding-window-size=100",
+                "resilience4j.circuitbreaker.instances.benchmark.ignore-exceptions=DecoratorChainBenchmark$BenchmarkFailure",
+                "resilience4j.bulkhead.instances.benchmark.max-concurrent-calls=1000",
+                "resilience4j.retry.instances.benchmark.max-attempts=3",
+                "resilience4j.retry.instances.benchmark.wait-duration=0",
+                "resilience4j.ratelimiter.instances.benchmark.limit-for-period=2147483647",
+                "resilience4j.ratelimiter.instances.benchmark.limit-refresh-period=1s",
+                "resilience4j.ratelimiter.instances.benchmark.timeout-duration=0",
+                "resilience4j.timelimiter.instances.benchmark.timeout-duration=1s")
+            .run();
+
+        // As duas formas usam as mesmas instancias, criadas pelos registries do Spring
+        circuitBreaker = context.getBean(CircuitBreakerRegistry.class).circuitBreaker("benchmark");
+        bulkhead = context.getBean(BulkheadRegistry.class).bulkhead("benchmark");
+        retry = context.getBean(RetryRegistry.class).retry("benchmark");
+        rateLimiter = context.getBean(RateLimiterRegistry.class).rateLimiter("benchmark");
+        timeLimiter = new VirtualThreadTimeLimiter("benchmark", Duration.ofSeconds(1));
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+
+        remoteCall = "failure".equals(path) ? DecoratorChainBenchmark::fail : DecoratorChainBenchmark::succeed;
+        if ("open".equals(path)) {
+            circuitBreaker.transitionToForcedOpenState();
+        }
+        annotated = context.getBean(AnnotatedUserClient.class);
+        annotated.remoteCall = remoteCall;
+        annotated.executor = executor;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        // se o circuito tivesse aberto, o caminho de falha teria medido o CallNotPermittedException
+        if ("failure".equals(path) && circuitBreaker.getState() != CircuitBreaker.State.CLOSED) {
+            throw new IllegalStateException("Circuit breaker left CLOSED during the failure benchmark");
+        }
+        timeLimiter.close();
+        executor.shutdownNow();
+        context.close();
+    }
+
+    @Benchmark
+    public Object baseline() {
+        return call(remoteCall);
+    }
+
+    @Benchmark
+    public Object circuitBreaker() {
+        return call(() -> circuitBreaker.executeSupplier(remoteCall));
+    }
+
+    @Benchmark
+    public Object bulkhead() {
+        return call(() -> bulkhead.executeSupplier(remoteCall));
+    }
+
+    @Benchmark
+    public Object retry() {
+        return call(() -> retry.executeSupplier(remoteCall));
+    }
+
+    @Benchmark
+    public Object rateLimiter() {
+        return call(() -> rateLimiter.executeSupplier(remoteCall));
+    }
+
+    // Inclui a troca de thread: a chamada roda em uma virtual thread e a thread do benchmark espera o resultado
+    @Benchmark
+    public Object timeLimiter() {
+        return call(() -> limit(remoteCall));
+    }
+
+    // TimeLimiter -> Bulkhead -> CircuitBreaker, igual a Svc.getUserBlocking
+    @Benchmark
+    public Object programmaticChain() {
+        return call(() -> limit(() -> bulkhead.executeSupplier(() -> circuitBreaker.executeSupplier(remoteCall))));
+    }
+
+    // Mesma ordem do aspecto do Resilience4j: Retry -> CircuitBreaker -> RateLimiter -> TimeLimiter -> Bulkhead
+    @Benchmark
+    public Object programmaticFullChain() {
+        return call(() -> retry.executeSupplier(() -> circuitBreaker.executeSupplier(() -> rateLimiter.executeSupplier(
+            () -> limit(() -> bulkhead.executeSupplier(remoteCall))))));
+    }
+
+    @Benchmark
+    public Object annotatedCircuitBreaker() {
+        return call(annotated::circuitBreaker);
+    }
+
+    @Benchmark
+    public Object annotatedBulkhead() {
+        return call(annotated::bulkhead);
+    }
+
+    @Benchmark
+    public Object annotatedRetry() {
+        return call(annotated::retry);
+    }
+
+    @Benchmark
+    public Object annotatedRateLimiter() {
+        return call(annotated::rateLimiter);
+    }
+
+    @Benchmark
+    public Object annotatedTimeLimiter() {
+        return call(() -> annotated.timeLimiter().join());
+    }
+
+    @Benchmark
+    public Object annotatedFullChain() {
+        return call(() -> annotated.fullChain().join());
+    }
+
+    private String limit(Supplier<String> supplier) {
+        try {
+            return timeLimiter.executeSupplier(supplier);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // Nos caminhos de falha e circuito aberto a excecao e o resultado
+    private static Object call(Supplier<?> supplier) {
+        try {
+            return supplier.get();
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+
+    private static String succeed() {
+        return "Usuário 42";
+    }
+
+    private static String fail() {
+        throw FAILURE;
+    }
+
+    // Sem stack trace: o caminho de falha mede os decoradores e nao o fillInStackTrace
+    static final class BenchmarkFailure extends RuntimeException {
+        BenchmarkFailure() {
+            super("Erro ao buscar usuário", null, false, false);
+        }
+    }
+
+    @Configuration
+    @EnableAutoConfiguration
+    @Import(AnnotatedUserClient.class)
+    static class BenchmarkConfiguration {
+    }
+
+    // O @TimeLimiter do Resilience4j so aceita metodos que devolvem CompletionStage
+    public static class AnnotatedUserClient {
+        volatile Supplier<String> remoteCall;
+        volatile ExecutorService executor;
+
+        @io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker(name = "benchmark")
+        public String circuitBreaker() {
+            return remoteCall.get();
+        }
+
+        @io.github.resilience4j.bulkhead.annotation.Bulkhead(name = "benchmark")
+        public String bulkhead() {
+            return remoteCall.get();
+        }
+
+        @io.github.resilience4j.retry.annotation.Retry(name = "benchmark")
+        public String retry() {
+            return remoteCall.get();
+        }
+
+        @io.github.resilience4j.ratelimiter.annotation.RateLimiter(name = "benchmark")
+        public String rateLimiter() {
+            return remoteCall.get();
+        }
+
+        @io.github.resilience4j.timelimiter.annotation.TimeLimiter(name = "benchmark")
+        public CompletableFuture<String> timeLimiter() {
+            return CompletableFuture.supplyAsync(remoteCall, executor);
+        }
+
+        @io.github.resilience4j.retry.annotation.Retry(name = "benchmark")
+        @io.github.resilience4j.circuitbreaker.annotation.CircuitBreaker(name = "benchmark")
+        @io.github.resilience4j.ratelimiter.annotation.RateLimiter(name = "benchmark")
+        @io.github.resilience4j.bulkhead.annotation.Bulkhead(name = "benchmark")
+        @io.github.resilience4j.timelimiter.annotation.TimeLimiter(name = "benchmark")
+        public CompletableFuture<String> fullChain() {
+            return CompletableFuture.supplyAsync(remoteCall, executor);
+        }
+    }
+}
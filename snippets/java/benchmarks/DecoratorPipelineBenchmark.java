@@ -0,0 +1,78 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+// CircuitBreaker -> Bulkhead no caminho de sucesso: lambdas aninhados por chamada contra o DecoratorPipeline montado uma vez.
+// Executar com: java -jar benchmarks.jar DecoratorPipelineBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+@Threads(4)
+public class DecoratorPipelineBenchmark {
+    private static final int USERS = 1024;
+
+    private final String[] users = new String[USERS];
+    private final String[] ids = new String[USERS];
+    private Bulkhead bulkhead;
+    private CircuitBreaker circuitBreaker;
+    private DecoratorPipeline<String, String> pipeline;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup
+    public void setup() {
+        for (int i = 0; i < USERS; i++) {
+            ids[i] = String.valueOf(i);
+            users[i] = "Usuário " + i;
+        }
+        bulkhead = Bulkhead.of("benchmark", BulkheadConfig.custom().maxConcurrentCalls(100).build());
+        circuitBreaker = CircuitBreaker.ofDefaults("benchmark");
+        // mesma ordem dos lambdas aninhados (e do aspecto do Resilience4j): o circuit breaker por fora do bulkhead
+        pipeline = DecoratorPipeline.<String, String>builder()
+            .with(DecoratorPipeline.circuitBreaker(circuitBreaker))
+            .with(DecoratorPipeline.bulkhead(bulkhead))
+            .build(this::remoteCall);
+    }
+
+    // Forma atual de UserService_Snippet_D.getUser
+    @Benchmark
+    public String nestedLambdas(Cursor cursor) {
+        String id = nextId(cursor);
+        return CircuitBreaker.decorateSupplier(circuitBreaker,
+                Bulkhead.decorateSupplier(bulkhead,
+                        () -> remoteCall(id))).get();
+    }
+
+    @Benchmark
+    public String pipeline(Cursor cursor) {
+        return pipeline.apply(nextId(cursor));
+    }
+
+    private String nextId(Cursor cursor) {
+        return ids[cursor.next++ & (USERS - 1)];
+    }
+
+    // Resposta pre-alocada: o que sobrar em gc.alloc.rate.norm e dos decoradores
+    private String remoteCall(String id) {
+        return users[Integer.parseInt(id)];
+    }
+}
@@ -0,0 +1,52 @@
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.lang.reflect.Method;
+import java.util.Base64;
+import java.util.concurrent.TimeUnit;
+
+// Executar com: java -jar benchmarks.jar KeyGeneratorBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class KeyGeneratorBenchmark {
+
+    private RSAEncryptionKeyGenerator rsaKeyGenerator;
+    private HmacKeyGenerator hmacKeyGenerator;
+    private Method method;
+
+    @Setup
+    public void setup() throws Exception {
+        rsaKeyGenerator = new RSAEncryptionKeyGenerator();
+        hmacKeyGenerator = new HmacKeyGenerator(Base64.getEncoder().encodeToString(new byte[32]));
+        method = DadosSensiveisService.class.getMethod("obterDadosSensiveis", String.class);
+    }
+
+    @Benchmark
+    public Object rsa() {
+        return rsaKeyGenerator.generate(this, method, "dados sensíveis do usuário 42");
+    }
+
+    @Benchmark
+    public Object hmac() {
+        return hmacKeyGenerator.generate(this, method, "dados sensíveis do usuário 42");
+    }
+
+    @Benchmark
+    public Object hmacMultipleParams() {
+        return hmacKeyGenerator.generate(this, method, "dados sensíveis do usuário", 42L, null);
+    }
+}
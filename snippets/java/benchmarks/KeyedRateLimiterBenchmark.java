@@ -0,0 +1,75 @@
+import io.github.resilience4j.ratelimiter.RateLimiter;
+import io.github.resilience4j.ratelimiter.RateLimiterConfig;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+// Custo do acquire do KeyedRateLimiter com uma unica chave quente (todas as threads no mesmo CAS), com chaves
+// espalhadas por uma tabela com milhoes de buckets e com a chave textual do chamador, comparado ao RateLimiter global
+// do Resilience4j. Com keys maior que a capacidade parte das chamadas termina em table_full, que tambem e medido.
+// Executar com: java -jar benchmarks.jar KeyedRateLimiterBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1g")
+@Threads(8)
+public class KeyedRateLimiterBenchmark {
+
+    @Param({"1000000", "3000000"})
+    public int keys;
+
+    private KeyedRateLimiter keyedRateLimiter;
+    private RateLimiter globalRateLimiter;
+    private String[] callers;
+
+    @Setup
+    public void setup() {
+        keyedRateLimiter = new KeyedRateLimiter("benchmark", 10, Duration.ofSeconds(1), 1 << 21);
+        globalRateLimiter = RateLimiter.of("benchmark", RateLimiterConfig.custom()
+            .limitForPeriod(10)
+            .limitRefreshPeriod(Duration.ofSeconds(1))
+            .timeoutDuration(Duration.ZERO)
+            .build());
+        callers = new String[1024];
+        for (int i = 0; i < callers.length; i++) {
+            callers[i] = "addr:10.0." + (i >> 8) + "." + (i & 0xff);
+        }
+    }
+
+    @Benchmark
+    public boolean hotKey() {
+        return keyedRateLimiter.tryAcquire(42L);
+    }
+
+    @Benchmark
+    public boolean spreadKeys() {
+        return keyedRateLimiter.tryAcquire(ThreadLocalRandom.current().nextInt(keys) + 1L);
+    }
+
+    // Inclui o hash da chave textual, como no UserController
+    @Benchmark
+    public boolean callerKeys() {
+        return keyedRateLimiter.tryAcquire(callers[ThreadLocalRandom.current().nextInt(callers.length)]);
+    }
+
+    // Referencia: um unico bucket para todos os chamadores
+    @Benchmark
+    public boolean global() {
+        return globalRateLimiter.acquirePermission();
+    }
+}
@@ -0,0 +1,93 @@
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+// Custo de registrar uma chamada: busca do meter por nome e tags a cada chamada contra o meter resolvido uma vez pelo
+// ResilienceMetricsBinder, e o circuit breaker sem metricas contra o mesmo circuit breaker ligado ao binder.
+// Executar com: java -jar benchmarks.jar ResilienceMetricsBenchmark -prof gc
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-XX:+UseParallelGC")
+@Threads(4)
+public class ResilienceMetricsBenchmark {
+    private static final long DURATION_NANOS = TimeUnit.MILLISECONDS.toNanos(12);
+
+    private MeterRegistry registry;
+    private ResilienceMetricsBinder binder;
+    private Timer timer;
+    private Counter counter;
+    private CircuitBreaker unboundCircuitBreaker;
+    private CircuitBreaker boundCircuitBreaker;
+
+    @Setup
+    public void setup() {
+        registry = new SimpleMeterRegistry();
+        binder = new ResilienceMetricsBinder(registry);
+        timer = Timer.builder("benchmark.calls").tag("name", "userService").tag("component", "resilience4j").tag("kind", "successful").register(registry);
+        counter = Counter.builder("benchmark.not.permitted.calls").tag("name", "userService").tag("component", "resilience4j").register(registry);
+        unboundCircuitBreaker = CircuitBreaker.ofDefaults("unbound");
+        boundCircuitBreaker = CircuitBreaker.ofDefaults("bound");
+        binder.bind(boundCircuitBreaker);
+    }
+
+    // Como o codigo que monta as tags no caminho da chamada: um Meter.Id e uma busca no mapa do registry por chamada, com
+    // as mesmas tres tags que o binder usa
+    @Benchmark
+    public void timerLookupPerCall() {
+        registry.timer("benchmark.calls", "name", "userService", "component", "resilience4j", "kind", "successful").record(DURATION_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void timerPreBound() {
+        timer.record(DURATION_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    public void counterLookupPerCall() {
+        registry.counter("benchmark.not.permitted.calls", "name", "userService", "component", "resilience4j").increment();
+    }
+
+    @Benchmark
+    public void counterPreBound() {
+        counter.increment();
+    }
+
+    // Referencia: sem consumidores o Resilience4j nem cria o evento
+    @Benchmark
+    public void circuitBreakerUnbound() {
+        unboundCircuitBreaker.acquirePermission();
+        unboundCircuitBreaker.onSuccess(DURATION_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    // A diferenca para circuitBreakerUnbound e o evento de sucesso e o record no Timer ja resolvido
+    @Benchmark
+    public void circuitBreakerBound() {
+        boundCircuitBreaker.acquirePermission();
+        boundCircuitBreaker.onSuccess(DURATION_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    @Benchmark
+    @Threads(1)
+    public List<ResilienceMetricsBinder.ComponentSnapshot> snapshot() {
+        return binder.snapshot();
+    }
+}
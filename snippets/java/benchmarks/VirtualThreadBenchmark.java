@@ -0,0 +1,87 @@
+import io.github.resilience4j.bulkhead.Bulkhead;
+import io.github.resilience4j.bulkhead.BulkheadConfig;
+import io.github.resilience4j.circuitbreaker.CircuitBreaker;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+// 10 mil chamadas lentas (50 ms) concorrentes passando por bulkhead -> circuit breaker.
+// Executar com Java 21: java -jar benchmarks.jar VirtualThreadBenchmark
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class VirtualThreadBenchmark {
+    private static final int CONCURRENT_CALLS = 10_000;
+
+    @Param({"platform", "virtual"})
+    public String threads;
+
+    @Param({"200"})
+    public int platformPoolSize;
+
+    private ExecutorService executor;
+    private Bulkhead bulkhead;
+    private CircuitBreaker circuitBreaker;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        executor = "virtual".equals(threads)
+            ? Executors.newVirtualThreadPerTaskExecutor()
+            : Executors.newFixedThreadPool(platformPoolSize);
+        bulkhead = Bulkhead.of("benchmark", BulkheadConfig.custom()
+            .maxConcurrentCalls(CONCURRENT_CALLS)
+            .maxWaitDuration(Duration.ofSeconds(10))
+            .build());
+        circuitBreaker = CircuitBreaker.ofDefaults("benchmark");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Benchmark
+    public int slowCalls() throws Exception {
+        List<Future<String>> futures = new ArrayList<>(CONCURRENT_CALLS);
+        for (int i = 0; i < CONCURRENT_CALLS; i++) {
+            String id = String.valueOf(i);
+            futures.add(executor.submit(() -> bulkhead.executeSupplier(() -> circuitBreaker.executeSupplier(() -> slowRemoteCall(id)))));
+        }
+        int completed = 0;
+        for (Future<String> future : futures) {
+            future.get();
+            completed++;
+        }
+        return completed;
+    }
+
+    private static String slowRemoteCall(String id) {
+        try {
+            Thread.sleep(50);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return "Usuário " + id;
+    }
+}
@@ -1,29 +1,35 @@
 public class UserService {
     private final RestTemplate restTemplate;
-    private final CircuitBreaker circuitBreaker;
-    private CircuitBreakerConfig circuitBreakerConfig;
-    private CircuitBreakerMetrics circuitBreakerMetrics;
-    private CircuitBreakerRegistry circuitBreakerRegistry;
-    private final Retry retry;
-    private RetryConfig retryConfig;
-    private RetryMetrics retryMetrics;
-    private RetryRegistry retryRegistry;
+    private final StripedCircuitBreaker circuitBreaker;
+    private final ReconfigurableRetry retry;
+    private ResiliencePolicyEngine policyEngine;
     private SleuthTracer tracer;
     private SleuthMeterEvents sleuthMeterEvents;
-    private MeterRegistry meterRegistry;
-    private MetricCollector metricCollector;
+    private final MeterRegistry meterRegistry;
+    private final ResilienceMetricsBinder metricsBinder;
     private OpenTelemetry openTelemetry;
     private TracerRegistry tracerRegistry;
 
-public UserServiceTriggers(RestTemplate restTemplate, CircuitBreaker circuitBreaker, Retry retry) {
+public UserServiceTriggers(RestTemplate restTemplate, StripedCircuitBreaker circuitBreaker, ReconfigurableRetry retry, MeterRegistry meterRegistry, ResilienceMetricsBinder metricsBinder) {
         this.restTemplate = restTemplate;
         this.circuitBreaker = circuitBreaker;
         this.retry = retry;
+        this.meterRegistry = meterRegistry;
+        this.metricsBinder = metricsBinder;
 }
 
-@CircuitBreaker(name = "userService", fallbackMethod = "getUserFallback")
-@Retry(name = "userService", fallbackMethod = "getUserFallback")
+// programmatic calls: the annotations would create their own instances, which the policyEngine could not reconfigure;
+// retry outside the circuit breaker: every attempt is recorded in the window, and once the circuit opens the retry
+// gets CallNotPermittedException (not a retried exception) and stops instead of hitting the remote service again
 public String getUser(String userId) {
+        try {
+            return retry.executeSupplier(() -> circuitBreaker.executeSupplier(() -> fetchUser(userId)));
+        } catch (RuntimeException e) {
+            return getUserFallback(userId, e);
+        }
+    }
+
+private String fetchUser(String userId) {
         try {
             return restTemplate.getForObject("https://jsonplaceholder.typicode.com/users/" + userId, String.class);
         } catch (HttpClientErrorException e) {
@@ -40,27 +46,12 @@ public String getUserFallback(String userId, Throwable throwable) {
 }
 
 public void setupResilienceTriggers() {
-    meterRegistry = new SimpleMeterRegistry();
     tracer = new SleuthTracer(meterRegistry);
     sleuthMeterEvents = new SleuthMeterEvents(tracer);
 
-    circuitBreakerConfig = CircuitBreakerConfig.custom()
-        .failureRateThreshold(50)
-        .waitDurationInOpenState(Duration.ofSeconds(30))
-        .ringBufferSizeInHalfOpenState(2)
-        .ringBufferSizeInClosedState(2)
-        .build();
-    circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-    circuitBreakerMetrics = new CircuitBreakerMetrics(circuitBreakerRegistry, meterRegistry);
-
-    retryConfig = RetryConfig.custom()
-        .maxAttempts(3)
-        .waitDuration(Duration.ofMillis(500))
-        .exponentialBackoff(2, Duration.ofSeconds(1))
-        .retryExceptions(TooManyRequestsException.class)
-        .build();
-    retryRegistry = RetryRegistry.of(retryConfig);
-    retryMetrics = new RetryMetrics(retryRegistry, meterRegistry);
+    // the retry counters are bound only once, even if setupResilienceTriggers runs again
+    metricsBinder.bind(circuitBreaker)
+        .bind(retry);
 
     tracerRegistry = new SimpleTracerRegistry();
     openTelemetry = OpenTelemetry.builder()
@@ -69,38 +60,12 @@ public void setupResilienceTriggers() {
         .build();
     openTelemetry.init();
 
-    metricCollector = new MetricCollector(
-            circuitBreakerMetrics, retryMetrics, sleuthMeterEvents);
-    metricCollector.start();
-
-    // schedule a task to adjust the circuit breaker and retry configurations in real-time
-    ScheduledExecutorService executorService = Executors.newSingleThreadScheduledExecutor();
-    executorService.scheduleAtFixedRate(() -> {
-        final double failureRate = circuitBreakerMetrics.getFailureRate();
-        final int bufferSize = circuitBreakerMetrics.getBufferSize();
-
-        // adjust the circuit breaker config if necessary
-        if (failureRate > 60) {
-            circuitBreakerConfig.failureRateThreshold(60);
-        } else if (failureRate < 40) {
-            circuitBreakerConfig.failureRateThreshold(40);
-        }
-
-        if (bufferSize < 5) {
-            circuitBreakerConfig.ringBufferSizeInHalfOpenState(5);
-            circuitBreakerConfig.ringBufferSizeInClosedState(5);
-        } else if (bufferSize > 10) {
-            circuitBreakerConfig.ringBufferSizeInHalfOpenState(10);
-            circuitBreakerConfig.ringBufferSizeInClosedState(10);
-        }
-
-        // adjust the retry config if necessary
-        final int currentAttempts = retryMetrics.getCurrentAttempts();
-        if (currentAttempts > 5) {
-            retryConfig.maxAttempts(5);
-        } else if (currentAttempts < 3) {
-            retryConfig.maxAttempts(3);
-        }
-    }, 10, 10, TimeUnit.SECONDS);
+    // adjust the circuit breaker and retry configurations in real-time, keeping their state and recorded calls
+    policyEngine = new ResiliencePolicyEngine("userService", Duration.ofSeconds(10), meterRegistry)
+        .register("failureRateThreshold", ResiliencePolicyEngine.failureRateThreshold(circuitBreaker, 40, 60))
+        .register("slidingWindowSize", ResiliencePolicyEngine.slidingWindowSize(circuitBreaker,
+            5, 60, Duration.ofSeconds(5), Duration.ofSeconds(60)))
+        .register("maxAttempts", ResiliencePolicyEngine.maxAttempts(retry, 3, 5))
+        .start();
   }
 }
\ No newline at end of file
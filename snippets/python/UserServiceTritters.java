@@ -1,11 +1,17 @@
 private final RestTemplate restTemplate;
 private final CircuitBreaker circuitBreaker;
 private final Retry retry;
+private final RetryBudget retryBudget;
+private final MeterRegistry meterRegistry;
+private final ResilienceMetricsBinder metricsBinder;
 
-public UserServiceTriggers(RestTemplate restTemplate, CircuitBreaker circuitBreaker, Retry retry) {
+public UserServiceTriggers(RestTemplate restTemplate, CircuitBreaker circuitBreaker, Retry retry, RetryBudget retryBudget, MeterRegistry meterRegistry, ResilienceMetricsBinder metricsBinder) {
     this.restTemplate = restTemplate;
     this.circuitBreaker = circuitBreaker;
     this.retry = retry;
+    this.retryBudget = retryBudget;
+    this.meterRegistry = meterRegistry;
+    this.metricsBinder = metricsBinder;
 }
 
 @CircuitBreaker(name = "userService", fallbackMethod = "getUserFallback")
@@ -27,27 +33,22 @@ public String getUserFallback(String userId, Throwable throwable) {
 }
 
 public void setupResilienceTriggers() {
-    final MeterRegistry meterRegistry = new SimpleMeterRegistry();
     final SleuthTracer tracer = new SleuthTracer(meterRegistry);
     final SleuthMeterEvents sleuthMeterEvents = new SleuthMeterEvents(tracer);
 
-    final CircuitBreakerConfig circuitBreakerConfig = CircuitBreakerConfig.custom()
-            .failureRateThreshold(50)
-            .waitDurationInOpenState(Duration.ofSeconds(30))
-            .ringBufferSizeInHalfOpenState(2)
-            .ringBufferSizeInClosedState(2)
-            .build();
-    final CircuitBreakerRegistry circuitBreakerRegistry = CircuitBreakerRegistry.of(circuitBreakerConfig);
-    final CircuitBreakerMetrics circuitBreakerMetrics = new CircuitBreakerMetrics(circuitBreakerRegistry, meterRegistry);
+    // metricas das instancias injetadas, resolvidas uma vez no MeterRegistry da aplicacao
+    metricsBinder.bind(circuitBreaker)
+            .bind(retry);
 
+    // backoff com jitter e retries limitados pelo budget compartilhado (ver Resilience4jConfig.retryRegistry); sem saldo
+    // o 429 e relancado como esta e chega ao getUserFallback
+    final Backoff backoff = Backoff.fullJitter(Duration.ofMillis(500), Duration.ofSeconds(5));
     final RetryConfig retryConfig = RetryConfig.custom()
             .maxAttempts(3)
-            .waitDuration(Duration.ofMillis(500))
-            .exponentialBackoff(2, Duration.ofSeconds(1))
-            .retryExceptions(TooManyRequestsException.class)
+            .intervalFunction(attempt -> backoff.delayMillis(attempt, 0))
+            .retryOnException(retryBudget.retryOn(e -> e instanceof TooManyRequestsException))
             .build();
     final RetryRegistry retryRegistry = RetryRegistry.of(retryConfig);
-    final RetryMetrics retryMetrics = new RetryMetrics(retryRegistry, meterRegistry);
 
     final TracerRegistry tracerRegistry = new SimpleTracerRegistry();
     final OpenTelemetry openTelemetry = OpenTelemetry.builder()